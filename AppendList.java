@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * @file  AppendList.java
+ *
+ * @author   agent
+ */
+
+import java.io.Serializable;
+import static java.lang.System.out;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*******************************************************************************
+ * The AppendList class stores the tuples of a table shared by several threads
+ * (see StorageType.APPEND_LIST).  Tuples may only be appended, and any number
+ * of threads may append and read at once without taking a lock.  The tuples
+ * live in segments of doubling size (the first holding 2^firstBits), so a
+ * position maps to its segment by a leading-zero count and no segment ever
+ * moves.  An appender reserves its positions by incrementing a counter, stores
+ * its tuples and then publishes them by advancing the published size.  Readers
+ * never wait: they see exactly the published tuples, always a prefix of the
+ * appends, and an iterator keeps the prefix published when it was created.
+ * Appending is not lock-free, however: an appender spins until every appender
+ * that reserved earlier positions has published, so one descheduled between
+ * reserving and publishing holds up the appenders behind it.
+ */
+public class AppendList
+       extends AbstractList <Comparable []>
+       implements RandomAccess, Serializable
+{
+    /** The number of spins an appender makes waiting to publish before yielding.
+     */
+    private static final int SPINS = 64;
+
+    /** Log base 2 of the size of the first segment.
+     */
+    private final int firstBits;
+
+    /** The segments (allocated as first needed).
+     */
+    private final AtomicReferenceArray <Comparable [][]> segment;
+
+    /** The number of positions reserved by appenders.
+     */
+    private final AtomicInteger reserved = new AtomicInteger ();
+
+    /** The number of tuples published (visible to readers).
+     */
+    private volatile int published = 0;
+
+    /***************************************************************************
+     * Construct an empty list with a first segment of 1024 tuples.
+     */
+    public AppendList ()
+    {
+        this (10);
+    } // AppendList
+
+    /***************************************************************************
+     * Construct an empty list.
+     * @param _firstBits  log base 2 of the size of the first segment (small for
+     *                    short lists, e.g., those of a secondary index)
+     */
+    public AppendList (int _firstBits)
+    {
+        firstBits = _firstBits;
+        segment   = new AtomicReferenceArray <> (segments ());
+    } // AppendList
+
+    /***************************************************************************
+     * Append a tuple.
+     * @param tup  the tuple to append
+     * @return  true
+     */
+    public boolean add (Comparable [] tup)
+    {
+        int i = reserved.getAndIncrement ();
+        store (i, tup);
+        publish (i, i + 1);
+        return true;
+    } // add
+
+    /***************************************************************************
+     * Append a batch of tuples, reserving their positions at once so that they
+     * are contiguous and published together.
+     * @param tups  the tuples to append
+     * @return  whether any were appended
+     */
+    public boolean addAll (Collection <? extends Comparable []> tups)
+    {
+        int n = tups.size ();
+        if (n == 0) return false;
+        int i = reserved.getAndAdd (n), first = i;
+        for (Comparable [] tup : tups) store (i++, tup);
+        publish (first, first + n);
+        return true;
+    } // addAll
+
+    /***************************************************************************
+     * Return the i-th tuple.
+     * @param i  the position of the tuple (less than size)
+     * @return  the tuple
+     */
+    public Comparable [] get (int i)
+    {
+        if (i < 0 || i >= published) throw new IndexOutOfBoundsException ("AppendList.get: " + i);
+        return segment.get (segmentOf (i)) [offsetOf (i)];
+    } // get
+
+    /***************************************************************************
+     * Return the segment holding a position.
+     * @param i  the position
+     * @return  the number of its segment
+     */
+    private int segmentOf (int i)
+    {
+        return 31 - Integer.numberOfLeadingZeros (i + (1 << firstBits)) - firstBits;
+    } // segmentOf
+
+    /***************************************************************************
+     * Return the offset of a position within its segment.
+     * @param i  the position
+     * @return  the offset
+     */
+    private int offsetOf (int i)
+    {
+        return i + (1 << firstBits) - Integer.highestOneBit (i + (1 << firstBits));
+    } // offsetOf
+
+    /***************************************************************************
+     * Return the number of segments the list may have.
+     * @return  the number of segments
+     */
+    private int segments ()
+    {
+        return 32 - firstBits;
+    } // segments
+
+    /***************************************************************************
+     * Return the size of a segment.
+     * @param s  the number of the segment
+     * @return  the number of positions it holds
+     */
+    private int segmentSize (int s)
+    {
+        return 1 << s + firstBits;
+    } // segmentSize
+
+    /***************************************************************************
+     * Return the number of published tuples.
+     * @return  the size of the list
+     */
+    public int size ()
+    {
+        return published;
+    } // size
+
+    /***************************************************************************
+     * Return an iterator over the tuples published when it is created.
+     * @return  the iterator
+     */
+    public Iterator <Comparable []> iterator ()
+    {
+        int end = published;
+        return new Iterator <Comparable []> () {
+            int i = 0;
+
+            public boolean hasNext () { return i < end; }
+
+            public Comparable [] next ()
+            {
+                if (i >= end) throw new NoSuchElementException ();
+                return get (i++);
+            } // next
+        };
+    } // iterator
+
+    /***************************************************************************
+     * Store a tuple at a reserved position, allocating its segment if no other
+     * appender has (when two race, the loser adopts the winner's segment).
+     * @param i    the reserved position
+     * @param tup  the tuple
+     */
+    private void store (int i, Comparable [] tup)
+    {
+        if (i < 0) throw new IllegalStateException ("AppendList: full");
+        int             s   = segmentOf (i);
+        Comparable [][] seg = segment.get (s);
+        if (seg == null) {
+            seg = new Comparable [segmentSize (s)][];
+            if (! segment.compareAndSet (s, null, seg)) seg = segment.get (s);
+        } // if
+        seg [offsetOf (i)] = tup;
+    } // store
+
+    /***************************************************************************
+     * Publish the stored tuples at positions from to upto - 1, once every
+     * earlier position has been published.  The volatile write of published
+     * makes the stored tuples visible to readers that see the new size.
+     * @param from  the first position
+     * @param upto  one past the last position
+     */
+    private void publish (int from, int upto)
+    {
+        for (int spin = 0; published != from; spin++) {
+            if (spin < SPINS) Thread.onSpinWait ();
+            else Thread.yield ();
+        } // for
+        published = upto;
+    } // publish
+
+    /***************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args) throws InterruptedException
+    {
+        int maxThreads = args.length > 0 ? Integer.parseInt (args [0]) : 8;
+        int perThread  = 50000;
+        for (int t = 1; t <= maxThreads; t <<= 1) {
+            int           nThreads = t;
+            AppendList    list     = new AppendList ();
+            Table         movie    = new Table ("movie", "title year length genre studioName producerNo",
+                                               "String Integer Integer String String Integer", "title year",
+                                               MapType.SKIPLIST_MAP, StorageType.APPEND_LIST);
+            Thread []     worker   = new Thread [nThreads];
+            AtomicInteger errors   = new AtomicInteger ();
+            for (int w = 0; w < nThreads; w++) {
+                int id = w;
+                worker [w] = new Thread (() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        int k = id * perThread + i;
+                        list.add (new Comparable [] { id, i });
+                        movie.insert (new Comparable [] { "Movie" + k, 1900 + k % 120, 100, "drama", "Fox", id });
+                    } // for
+                });
+            } // for
+            Thread reader = new Thread (() -> {             // each scan must see a prefix of every worker's adds
+                while (list.size () < nThreads * perThread) {
+                    int [] next = new int [nThreads];
+                    for (Comparable [] tup : list) {
+                        if ((Integer) tup [1] != next [(Integer) tup [0]]++) errors.incrementAndGet ();
+                    } // for
+                    try {
+                        Thread.sleep (10);
+                    } catch (InterruptedException ex) {
+                        return;
+                    } // try
+                } // while
+            });
+
+            java.io.PrintStream stdout = System.out;
+            System.setOut (new java.io.PrintStream (java.io.OutputStream.nullOutputStream ()));
+            long start = System.nanoTime ();
+            for (Thread w : worker) w.start ();
+            reader.start ();
+            for (Thread w : worker) w.join ();
+            long ms = (System.nanoTime () - start) / 1000000;
+            reader.join ();
+            int found = movie.select ("title == Movie" + (nThreads * perThread - 1)).size ();
+            System.setOut (stdout);
+
+            out.println (nThreads + " threads: " + movie.size () + " inserts in " + ms + " ms, last key found "
+                         + found + ", scans out of order " + errors.get ());
+        } // for
+    } // main
+
+} // AppendList class
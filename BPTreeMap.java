@@ -0,0 +1,639 @@
+/*******************************************************************************
+ * @file  BPTreeMap.java
+ *
+ * @author   agent
+ */
+
+import java.io.*;
+import static java.lang.System.out;
+import java.util.*;
+
+/*******************************************************************************
+ * The BPTreeMap class provides B+-Tree maps.  B+-Trees are used as multi-level
+ * index structures that provide efficient access for both point queries and
+ * range queries.  Each node holds up to 'order' keys in a flat array, so a probe
+ * touches a few wide nodes rather than chasing a pointer per comparison, and
+ * the leaves are linked left to right so ranges are read by walking siblings.
+ * A map built from sorted input may be bulk-loaded bottom-up (see bulkLoad).
+ */
+public class BPTreeMap <K extends Comparable <K>, V>
+       extends AbstractMap <K, V>
+       implements SortedMap <K, V>, Serializable
+{
+    /** The default maximum number of keys per node.
+     */
+    public static final int ORDER = 128;
+
+    /** The maximum number of keys per node (the fan-out is order + 1).
+     */
+    private final int order;
+
+    /** The root of the B+-Tree.
+     */
+    private transient Node root;
+
+    /** The leftmost leaf, where in-order iteration starts.
+     */
+    private transient Node firstLeaf;
+
+    /** The number of entries in the map.
+     */
+    private transient int size;
+
+    /***************************************************************************
+     * The Node class is a leaf or internal node of the B+-Tree.  A leaf holds
+     * keys with their values and a link to its right sibling; an internal node
+     * holds keys separating its children, where child i covers the keys k with
+     * key [i-1] <= k < key [i].  The arrays have one spare slot so a node may
+     * overflow by one entry before it is split.
+     */
+    private static final class Node
+    {
+        final boolean  isLeaf;
+        int            nKeys;
+        final Object [] key;
+        final Object [] ref;                         // values (leaf) or children
+        Node           next;                         // right sibling (leaf only)
+
+        Node (int order, boolean _isLeaf)
+        {
+            isLeaf = _isLeaf;
+            key    = new Object [order + 1];
+            ref    = new Object [order + 2];
+        } // Node
+
+    } // Node class
+
+    /***************************************************************************
+     * Construct an empty B+-Tree map with the default order.
+     */
+    public BPTreeMap ()
+    {
+        this (ORDER);
+    } // BPTreeMap
+
+    /***************************************************************************
+     * Construct an empty B+-Tree map whose nodes hold at most _order keys.
+     * @param _order  the maximum number of keys per node (at least 3)
+     */
+    public BPTreeMap (int _order)
+    {
+        if (_order < 3) throw new IllegalArgumentException ("BPTreeMap: order must be at least 3");
+        order     = _order;
+        root      = new Node (order, true);
+        firstLeaf = root;
+    } // BPTreeMap
+
+    /***************************************************************************
+     * Return null, as keys are kept in their natural order.
+     * @return  null
+     */
+    public Comparator <? super K> comparator ()
+    {
+        return null;
+    } // comparator
+
+    /***************************************************************************
+     * Return the number of entries in the map.
+     * @return  the size of the map
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /***************************************************************************
+     * Remove all entries from the map.
+     */
+    public void clear ()
+    {
+        root      = new Node (order, true);
+        firstLeaf = root;
+        size      = 0;
+    } // clear
+
+    /***************************************************************************
+     * Return the value associated with the key.
+     * @param key  the key used for look up
+     * @return  the value associated with the key, or null if absent
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        K    k = (K) key;
+        Node n = findLeaf (k);
+        int  i = search (n, k);
+        return i >= 0 ? (V) n.ref [i] : null;
+    } // get
+
+    /***************************************************************************
+     * Determine whether the map contains the key.
+     * @param key  the key to look for
+     * @return  whether an entry with that key exists
+     */
+    @SuppressWarnings("unchecked")
+    public boolean containsKey (Object key)
+    {
+        K k = (K) key;
+        return search (findLeaf (k), k) >= 0;
+    } // containsKey
+
+    /***************************************************************************
+     * Put the key-value pair in the B+-Tree map.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the value previously associated with the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put (K key, V value)
+    {
+        if (key == null) throw new NullPointerException ("BPTreeMap.put: null key");
+
+        Object [] prev  = new Object [1];
+        Object [] split = insert (root, key, value, prev);
+        if (split != null) {                                // grow a new root
+            Node r = new Node (order, false);
+            r.key [0] = split [0];
+            r.ref [0] = root;
+            r.ref [1] = split [1];
+            r.nKeys   = 1;
+            root      = r;
+        } // if
+        return (V) prev [0];
+    } // put
+
+    /***************************************************************************
+     * Copy all entries of the given map into this one.  An empty B+-Tree filled
+     * from a naturally ordered sorted map is bulk-loaded rather than built by
+     * repeated insertion.
+     * @param m  the map whose entries are copied
+     */
+    public void putAll (Map <? extends K, ? extends V> m)
+    {
+        if (size == 0 && m instanceof SortedMap && ((SortedMap <?, ?>) m).comparator () == null) {
+            bulkLoad (m.entrySet ().iterator ());
+        } else {
+            super.putAll (m);
+        } // if
+    } // putAll
+
+    /***************************************************************************
+     * Build the B+-Tree bottom-up from entries in strictly ascending key order:
+     * the leaves are filled left to right and each internal level is built over
+     * the level below, so loading n entries takes O(n) time.  The map must be
+     * empty.
+     * @param sorted  the entries in ascending key order
+     */
+    public void bulkLoad (Iterator <? extends Map.Entry <? extends K, ? extends V>> sorted)
+    {
+        if (size != 0) throw new IllegalStateException ("BPTreeMap.bulkLoad: map is not empty");
+
+        List <Node>   level = new ArrayList <> ();          // the leaves
+        List <Object> mins  = new ArrayList <> ();          // the smallest key under each node
+        Node leaf = null;
+        K    last = null;
+        while (sorted.hasNext ()) {
+            Map.Entry <? extends K, ? extends V> e = sorted.next ();
+            K k = e.getKey ();
+            if (last != null && last.compareTo (k) >= 0) {
+                clear ();
+                throw new IllegalArgumentException ("BPTreeMap.bulkLoad: keys not in ascending order");
+            } // if
+            if (leaf == null || leaf.nKeys == order) {
+                Node n = new Node (order, true);
+                if (leaf != null) leaf.next = n;
+                leaf = n;
+                level.add (n);
+                mins.add (k);
+            } // if
+            leaf.key [leaf.nKeys]   = k;
+            leaf.ref [leaf.nKeys++] = e.getValue ();
+            last = k;
+            size++;
+        } // while
+        if (level.isEmpty ()) return;
+        firstLeaf = level.get (0);
+
+        while (level.size () > 1) {                         // build the next level up
+            List <Node>   up     = new ArrayList <> ();
+            List <Object> upMins = new ArrayList <> ();
+            int g = (level.size () + order) / (order + 1);  // number of parents, children spread evenly
+            for (int p = 0, i = 0; p < g; p++) {
+                int  m = level.size () / g + (p < level.size () % g ? 1 : 0);
+                Node n = new Node (order, false);
+                for (int j = 0; j < m; j++) {
+                    n.ref [j] = level.get (i + j);
+                    if (j > 0) n.key [j - 1] = mins.get (i + j);
+                } // for
+                n.nKeys = m - 1;
+                up.add (n);
+                upMins.add (mins.get (i));
+                i += m;
+            } // for
+            level = up;
+            mins  = upMins;
+        } // while
+        root = level.get (0);
+    } // bulkLoad
+
+    /***************************************************************************
+     * Fill an empty map from entries in strictly ascending key order, building
+     * it bottom-up where the map allows: a BPTreeMap is bulk-loaded, and a
+     * TreeMap copies a bulk-loaded BPTreeMap, which TreeMap.putAll builds from
+     * in linear time as both use the natural ordering.  Any other map gets one
+     * put per entry.
+     * @param map     the empty map to fill
+     * @param sorted  the entries in ascending key order
+     */
+    public static <K extends Comparable <K>, V> void loadSorted (Map <K, V> map,
+                  Iterator <? extends Map.Entry <? extends K, ? extends V>> sorted)
+    {
+        if (map instanceof BPTreeMap) {
+            ((BPTreeMap <K, V>) map).bulkLoad (sorted);
+        } else if (map instanceof TreeMap && map.isEmpty () && ((TreeMap <K, V>) map).comparator () == null) {
+            BPTreeMap <K, V> tree = new BPTreeMap <> ();
+            tree.bulkLoad (sorted);
+            map.putAll (tree);
+        } else {
+            while (sorted.hasNext ()) {
+                Map.Entry <? extends K, ? extends V> e = sorted.next ();
+                map.put (e.getKey (), e.getValue ());
+            } // while
+        } // if
+    } // loadSorted
+
+    /***************************************************************************
+     * Return the first (smallest) key in the map.
+     * @return  the first key
+     */
+    @SuppressWarnings("unchecked")
+    public K firstKey ()
+    {
+        if (size == 0) throw new NoSuchElementException ();
+        return (K) firstLeaf.key [0];
+    } // firstKey
+
+    /***************************************************************************
+     * Return the last (largest) key in the map.
+     * @return  the last key
+     */
+    @SuppressWarnings("unchecked")
+    public K lastKey ()
+    {
+        if (size == 0) throw new NoSuchElementException ();
+        Node n = root;
+        while (! n.isLeaf) n = (Node) n.ref [n.nKeys];
+        return (K) n.key [n.nKeys - 1];
+    } // lastKey
+
+    /***************************************************************************
+     * Return the portion of the map whose keys are less than toKey.
+     * @param toKey  the exclusive upper bound
+     * @return  a view of the map below toKey
+     */
+    public SortedMap <K, V> headMap (K toKey)
+    {
+        return new SubMap (null, toKey);
+    } // headMap
+
+    /***************************************************************************
+     * Return the portion of the map whose keys are greater than or equal to fromKey.
+     * @param fromKey  the inclusive lower bound
+     * @return  a view of the map from fromKey on
+     */
+    public SortedMap <K, V> tailMap (K fromKey)
+    {
+        return new SubMap (fromKey, null);
+    } // tailMap
+
+    /***************************************************************************
+     * Return the portion of the map whose keys lie in [fromKey, toKey).
+     * @param fromKey  the inclusive lower bound
+     * @param toKey    the exclusive upper bound
+     * @return  a view of the map between the bounds
+     */
+    public SortedMap <K, V> subMap (K fromKey, K toKey)
+    {
+        return new SubMap (fromKey, toKey);
+    } // subMap
+
+    /***************************************************************************
+     * Return the set of entries in ascending key order, read by walking the
+     * linked leaves.
+     * @return  the entry set view of the map
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new EntrySet (null, null);
+    } // entrySet
+
+    /***************************************************************************
+     * Return the leaf whose key range covers the given key.
+     * @param k  the key to look for
+     * @return  the leaf that holds k if it is present
+     */
+    @SuppressWarnings("unchecked")
+    private Node findLeaf (K k)
+    {
+        Node n = root;
+        while (! n.isLeaf) {
+            int lo = 0, hi = n.nKeys;                       // first i with k < key [i]
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (k.compareTo ((K) n.key [mid]) < 0) hi = mid; else lo = mid + 1;
+            } // while
+            n = (Node) n.ref [lo];
+        } // while
+        return n;
+    } // findLeaf
+
+    /***************************************************************************
+     * Binary search a node's keys.
+     * @param n  the node to search
+     * @param k  the key to look for
+     * @return  the position of k, or -(insertion point) - 1 if absent
+     */
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable <K>> int search (Node n, K k)
+    {
+        int lo = 0, hi = n.nKeys - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c   = ((K) n.key [mid]).compareTo (k);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        } // while
+        return -(lo + 1);
+    } // search
+
+    /***************************************************************************
+     * Recursively insert the key-value pair into the subtree rooted at n.
+     * @param n      the root of the subtree
+     * @param k      the key to insert
+     * @param v      the value to insert
+     * @param prev   holder for the value replaced, if any
+     * @return  { separator key, new right sibling } if n split, otherwise null
+     */
+    @SuppressWarnings("unchecked")
+    private Object [] insert (Node n, K k, V v, Object [] prev)
+    {
+        if (n.isLeaf) {
+            int i = search (n, k);
+            if (i >= 0) {
+                prev [0]  = n.ref [i];
+                n.ref [i] = v;
+                return null;
+            } // if
+            i = -i - 1;
+            System.arraycopy (n.key, i, n.key, i + 1, n.nKeys - i);
+            System.arraycopy (n.ref, i, n.ref, i + 1, n.nKeys - i);
+            n.key [i] = k;
+            n.ref [i] = v;
+            n.nKeys++;
+            size++;
+            return n.nKeys > order ? splitLeaf (n) : null;
+        } // if
+
+        int lo = 0, hi = n.nKeys;                           // first i with k < key [i]
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (k.compareTo ((K) n.key [mid]) < 0) hi = mid; else lo = mid + 1;
+        } // while
+        Object [] split = insert ((Node) n.ref [lo], k, v, prev);
+        if (split == null) return null;
+
+        System.arraycopy (n.key, lo, n.key, lo + 1, n.nKeys - lo);
+        System.arraycopy (n.ref, lo + 1, n.ref, lo + 2, n.nKeys - lo);
+        n.key [lo]     = split [0];
+        n.ref [lo + 1] = split [1];
+        n.nKeys++;
+        return n.nKeys > order ? splitInternal (n) : null;
+    } // insert
+
+    /***************************************************************************
+     * Split an overfull leaf, copying the right half's first key up.
+     * @param n  the leaf to split
+     * @return  { separator key, new right leaf }
+     */
+    private Object [] splitLeaf (Node n)
+    {
+        Node r   = new Node (order, true);
+        int  mid = n.nKeys / 2;
+        r.nKeys  = n.nKeys - mid;
+        System.arraycopy (n.key, mid, r.key, 0, r.nKeys);
+        System.arraycopy (n.ref, mid, r.ref, 0, r.nKeys);
+        Arrays.fill (n.key, mid, n.nKeys, null);
+        Arrays.fill (n.ref, mid, n.nKeys, null);
+        n.nKeys = mid;
+        r.next  = n.next;
+        n.next  = r;
+        return new Object [] { r.key [0], r };
+    } // splitLeaf
+
+    /***************************************************************************
+     * Split an overfull internal node, moving its middle key up.
+     * @param n  the internal node to split
+     * @return  { separator key, new right node }
+     */
+    private Object [] splitInternal (Node n)
+    {
+        Node   r   = new Node (order, false);
+        int    mid = n.nKeys / 2;
+        Object sep = n.key [mid];
+        r.nKeys    = n.nKeys - mid - 1;
+        System.arraycopy (n.key, mid + 1, r.key, 0, r.nKeys);
+        System.arraycopy (n.ref, mid + 1, r.ref, 0, r.nKeys + 1);
+        Arrays.fill (n.key, mid, n.nKeys, null);
+        Arrays.fill (n.ref, mid + 1, n.nKeys + 1, null);
+        n.nKeys = mid;
+        return new Object [] { sep, r };
+    } // splitInternal
+
+    /***************************************************************************
+     * Write the map as its order, size and entries in key order, so the linked
+     * leaves are not serialized recursively.
+     * @param oos  the stream to write to
+     */
+    private void writeObject (ObjectOutputStream oos) throws IOException
+    {
+        oos.defaultWriteObject ();
+        oos.writeInt (size);
+        for (Map.Entry <K, V> e : entrySet ()) {
+            oos.writeObject (e.getKey ());
+            oos.writeObject (e.getValue ());
+        } // for
+    } // writeObject
+
+    /***************************************************************************
+     * Read the map written by writeObject, bulk-loading the entries.
+     * @param ois  the stream to read from
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject (ObjectInputStream ois) throws IOException, ClassNotFoundException
+    {
+        ois.defaultReadObject ();
+        int n = ois.readInt ();
+        List <Map.Entry <K, V>> entries = new ArrayList <> (n);
+        for (int i = 0; i < n; i++) {
+            entries.add (new SimpleImmutableEntry <> ((K) ois.readObject (), (V) ois.readObject ()));
+        } // for
+        clear ();
+        bulkLoad (entries.iterator ());
+    } // readObject
+
+    /***************************************************************************
+     * The EntrySet class is the set of entries with keys in [lo, hi), where a
+     * null bound is open.
+     */
+    private final class EntrySet
+            extends AbstractSet <Map.Entry <K, V>>
+    {
+        private final K lo, hi;
+
+        EntrySet (K _lo, K _hi) { lo = _lo; hi = _hi; }
+
+        public int size ()
+        {
+            if (lo == null && hi == null) return size;
+            int n = 0;
+            for (Iterator <Map.Entry <K, V>> it = iterator (); it.hasNext (); it.next ()) n++;
+            return n;
+        } // size
+
+        @SuppressWarnings("unchecked")
+        public Iterator <Map.Entry <K, V>> iterator ()
+        {
+            Node start = lo == null ? firstLeaf : findLeaf (lo);
+            int  pos   = 0;
+            if (lo != null) {
+                pos = search (start, lo);
+                if (pos < 0) pos = -pos - 1;
+            } // if
+            Node n0 = start;
+            int  p0 = pos;
+
+            return new Iterator <Map.Entry <K, V>> () {
+                Node n = n0;
+                int  i = p0;
+
+                public boolean hasNext ()
+                {
+                    while (n != null && i >= n.nKeys) { n = n.next; i = 0; }
+                    return n != null && (hi == null || ((K) n.key [i]).compareTo (hi) < 0);
+                } // hasNext
+
+                public Map.Entry <K, V> next ()
+                {
+                    if (! hasNext ()) throw new NoSuchElementException ();
+                    Map.Entry <K, V> e = new SimpleImmutableEntry <> ((K) n.key [i], (V) n.ref [i]);
+                    i++;
+                    return e;
+                } // next
+            };
+        } // iterator
+
+    } // EntrySet class
+
+    /***************************************************************************
+     * The SubMap class is a view of the entries with keys in [lo, hi), where a
+     * null bound is open.
+     */
+    private final class SubMap
+            extends AbstractMap <K, V>
+            implements SortedMap <K, V>
+    {
+        private final K lo, hi;
+
+        SubMap (K _lo, K _hi) { lo = _lo; hi = _hi; }
+
+        private boolean inRange (K k)
+        {
+            return (lo == null || k.compareTo (lo) >= 0) && (hi == null || k.compareTo (hi) < 0);
+        } // inRange
+
+        @SuppressWarnings("unchecked")
+        public V get (Object key)
+        {
+            return inRange ((K) key) ? BPTreeMap.this.get (key) : null;
+        } // get
+
+        @SuppressWarnings("unchecked")
+        public boolean containsKey (Object key)
+        {
+            return inRange ((K) key) && BPTreeMap.this.containsKey (key);
+        } // containsKey
+
+        public V put (K key, V value)
+        {
+            if (! inRange (key)) throw new IllegalArgumentException ("BPTreeMap.SubMap.put: key out of range");
+            return BPTreeMap.this.put (key, value);
+        } // put
+
+        public Set <Map.Entry <K, V>> entrySet () { return new EntrySet (lo, hi); }
+
+        public Comparator <? super K> comparator () { return null; }
+
+        public K firstKey ()
+        {
+            Iterator <Map.Entry <K, V>> it = entrySet ().iterator ();
+            if (! it.hasNext ()) throw new NoSuchElementException ();
+            return it.next ().getKey ();
+        } // firstKey
+
+        public K lastKey ()
+        {
+            K last = null;
+            for (Map.Entry <K, V> e : entrySet ()) last = e.getKey ();
+            if (last == null) throw new NoSuchElementException ();
+            return last;
+        } // lastKey
+
+        public SortedMap <K, V> headMap (K toKey) { return subMap (lo, toKey); }
+
+        public SortedMap <K, V> tailMap (K fromKey) { return subMap (fromKey, hi); }
+
+        public SortedMap <K, V> subMap (K fromKey, K toKey)
+        {
+            K l = lo == null || fromKey != null && fromKey.compareTo (lo) > 0 ? fromKey : lo;
+            K h = hi == null || toKey != null && toKey.compareTo (hi) < 0 ? toKey : hi;
+            return new SubMap (l, h);
+        } // subMap
+
+    } // SubMap class
+
+    /***************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        BPTreeMap <Integer, Integer> bpt = new BPTreeMap <> (4);
+        TreeMap   <Integer, Integer> tm  = new TreeMap <> ();
+        Random rand = new Random (7);
+        for (int i = 0; i < 10000; i++) {
+            int k = rand.nextInt (5000);
+            if (! Objects.equals (bpt.put (k, i), tm.put (k, i))) out.println ("put mismatch at " + k);
+        } // for
+        out.println ("size:       " + bpt.size () + " (TreeMap " + tm.size () + ")");
+        out.println ("equal:      " + bpt.equals (tm));
+        out.println ("first/last: " + bpt.firstKey () + " " + bpt.lastKey ()
+                                  + " (TreeMap " + tm.firstKey () + " " + tm.lastKey () + ")");
+        out.println ("subMap:     " + bpt.subMap (1000, 1100).keySet ().equals (tm.subMap (1000, 1100).keySet ()));
+        out.println ("headMap:    " + bpt.headMap (250).equals (tm.headMap (250)));
+        out.println ("tailMap:    " + bpt.tailMap (4900).equals (tm.tailMap (4900)));
+
+        BPTreeMap <Integer, Integer> bulk = new BPTreeMap <> (4);
+        bulk.putAll (tm);
+        out.println ("bulkLoad:   " + bulk.equals (tm) + ", get (1234) = " + bulk.get (1234)
+                                  + " (TreeMap " + tm.get (1234) + ")");
+        bulk.put (-1, -1);
+        bulk.put (99999, 0);
+        out.println ("after put:  " + bulk.size () + " " + bulk.firstKey () + " " + bulk.lastKey ());
+
+        TreeMap <Integer, Integer> copy = new TreeMap <> ();
+        loadSorted (copy, tm.entrySet ().iterator ());
+        out.println ("loadSorted: " + copy.equals (tm) + " " + copy.size () + " " + copy.firstKey () + " " + copy.lastKey ());
+    } // main
+
+} // BPTreeMap class
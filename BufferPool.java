@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * @file  BufferPool.java
+ *
+ * @author   agent
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.lang.System.out;
+import java.util.*;
+
+/*******************************************************************************
+ * The BufferPool class caches fixed-size pages of table files (see FileList) in
+ * a fixed number of frames shared by every table in the JVM.  A page is pinned
+ * while in use and unpinned afterwards, marking it dirty if it was changed.
+ * When a page is needed that is not cached, the CLOCK algorithm picks an
+ * unpinned frame whose page has not been referenced since the hand last passed
+ * it, writing that page back first if it is dirty.  The page size and the
+ * number of frames are set with -Ddbp.pageSize and -Ddbp.poolPages.
+ */
+public class BufferPool
+{
+    /** The size of a page in bytes.
+     */
+    public static final int PAGE_SIZE = Integer.getInteger ("dbp.pageSize", 1 << 13);
+
+    /** The number of frames (pages held in memory at once).
+     */
+    public static final int POOL_PAGES = Integer.getInteger ("dbp.poolPages", 1 << 12);
+
+    /** The buffer pool shared by all tables.
+     */
+    private static final BufferPool POOL = new BufferPool (PAGE_SIZE, POOL_PAGES);
+
+    /***************************************************************************
+     * The Frame class holds one page of a file in memory.
+     */
+    static final class Frame
+    {
+        final ByteBuffer data;
+        int              file = -1;                  // -1 when the frame is free
+        int              page;
+        int              pins;
+        boolean          dirty;
+        boolean          ref;
+
+        Frame (int pageSize) { data = ByteBuffer.allocate (pageSize); }
+
+    } // Frame class
+
+    /** The size of a page in bytes.
+     */
+    private final int pageSize;
+
+    /** The frames holding the cached pages.
+     */
+    private final Frame [] frame;
+
+    /** The frame holding each cached page, keyed by file and page number.
+     */
+    private final HashMap <Long, Frame> pageTable = new HashMap <> ();
+
+    /** The channels of the registered files.
+     */
+    private final HashMap <Integer, FileChannel> files = new HashMap <> ();
+
+    /** The identifier to give the next registered file.
+     */
+    private int nextFile = 0;
+
+    /** The position of the CLOCK hand.
+     */
+    private int hand = 0;
+
+    /** The numbers of page requests served from memory and from disk, of pages
+     *  evicted and of dirty pages written back.
+     */
+    private long hits, misses, evictions, writes;
+
+    /***************************************************************************
+     * Construct a buffer pool.
+     * @param _pageSize  the size of a page in bytes
+     * @param nFrames    the number of frames
+     */
+    BufferPool (int _pageSize, int nFrames)
+    {
+        if (_pageSize < 1 || nFrames < 1) throw new IllegalArgumentException ("BufferPool: bad size");
+        pageSize = _pageSize;
+        frame    = new Frame [nFrames];
+        for (int i = 0; i < nFrames; i++) frame [i] = new Frame (pageSize);
+    } // BufferPool
+
+    /***************************************************************************
+     * Return the buffer pool shared by all tables.
+     * @return  the buffer pool
+     */
+    public static BufferPool getPool ()
+    {
+        return POOL;
+    } // getPool
+
+    /***************************************************************************
+     * Return the size of a page in bytes.
+     * @return  the page size
+     */
+    public int pageSize ()
+    {
+        return pageSize;
+    } // pageSize
+
+    /***************************************************************************
+     * Register a file whose pages are to be cached.
+     * @param channel  the channel used to read and write the file
+     * @return  the identifier of the file
+     */
+    synchronized int register (FileChannel channel)
+    {
+        files.put (nextFile, channel);
+        return nextFile++;
+    } // register
+
+    /***************************************************************************
+     * Pin a page in memory, reading it from its file if it is not cached.  A page
+     * beyond the end of the file reads as zeros.  The frame may not be evicted
+     * until it is unpinned.
+     * @param file  the identifier of the file
+     * @param page  the page number
+     * @return  the frame holding the page
+     */
+    synchronized Frame pin (int file, int page)
+    {
+        Frame f = pageTable.get (key (file, page));
+        if (f != null) {
+            hits++;
+        } else {
+            misses++;
+            f = victim ();
+            f.file  = file;
+            f.page  = page;
+            f.dirty = false;
+            read (f);
+            pageTable.put (key (file, page), f);
+        } // if
+        f.pins++;
+        f.ref = true;
+        return f;
+    } // pin
+
+    /***************************************************************************
+     * Unpin a page.
+     * @param f      the frame returned by pin
+     * @param dirty  whether the page was changed
+     */
+    synchronized void unpin (Frame f, boolean dirty)
+    {
+        if (f.pins <= 0) throw new IllegalStateException ("BufferPool.unpin: page not pinned");
+        f.pins--;
+        f.dirty |= dirty;
+    } // unpin
+
+    /***************************************************************************
+     * Discard the cached pages of a file without writing them and forget the
+     * file (used when the file is deleted).
+     * @param file  the identifier of the file
+     */
+    synchronized void drop (int file)
+    {
+        for (Frame f : frame) {
+            if (f.file == file) {
+                pageTable.remove (key (f.file, f.page));
+                f.file  = -1;
+                f.pins  = 0;
+                f.dirty = false;
+            } // if
+        } // for
+        files.remove (file);
+    } // drop
+
+    /***************************************************************************
+     * Return the number of page requests served from memory.
+     * @return  the number of hits
+     */
+    public synchronized long hits ()
+    {
+        return hits;
+    } // hits
+
+    /***************************************************************************
+     * Return the number of page requests that had to read the page from disk.
+     * @return  the number of misses
+     */
+    public synchronized long misses ()
+    {
+        return misses;
+    } // misses
+
+    /***************************************************************************
+     * Reset the counters.
+     */
+    public synchronized void resetStats ()
+    {
+        hits = misses = evictions = writes = 0;
+    } // resetStats
+
+    /***************************************************************************
+     * Return the counters in printable form.
+     * @return  the hits, misses, hit ratio, evictions and write-backs
+     */
+    public synchronized String stats ()
+    {
+        long n = hits + misses;
+        return String.format ("BufferPool: %d frames of %d bytes, hits %d, misses %d (hit ratio %.3f), "
+                              + "evictions %d, write-backs %d",
+                              frame.length, pageSize, hits, misses, n == 0 ? 0.0 : (double) hits / n,
+                              evictions, writes);
+    } // stats
+
+    /***************************************************************************
+     * Choose a frame for a new page by the CLOCK algorithm: the hand skips
+     * pinned frames and clears the reference bit of referenced ones, stopping
+     * at the first free or unreferenced frame, whose page is written back if
+     * dirty and evicted.
+     * @return  the free frame
+     */
+    private Frame victim ()
+    {
+        for (int n = 0; n < 2 * frame.length; n++) {
+            Frame f = frame [hand];
+            hand = (hand + 1) % frame.length;
+            if (f.file < 0) return f;
+            if (f.pins > 0) continue;
+            if (f.ref) { f.ref = false; continue; }
+            if (f.dirty) write (f);
+            pageTable.remove (key (f.file, f.page));
+            f.file = -1;
+            evictions++;
+            return f;
+        } // for
+        throw new IllegalStateException ("BufferPool: all " + frame.length + " frames are pinned");
+    } // victim
+
+    /***************************************************************************
+     * Read a frame's page from its file, zero filling past the end of the file.
+     * @param f  the frame to fill
+     */
+    private void read (Frame f)
+    {
+        FileChannel ch  = files.get (f.file);
+        ByteBuffer  buf = f.data;
+        long        pos = (long) f.page * pageSize;
+        buf.clear ();
+        try {
+            while (buf.hasRemaining ()) {
+                int n = ch.read (buf, pos + buf.position ());
+                if (n < 0) break;
+            } // while
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("BufferPool.read", ex);
+        } // try
+        while (buf.hasRemaining ()) buf.put ((byte) 0);
+        buf.clear ();
+    } // read
+
+    /***************************************************************************
+     * Write a frame's page back to its file.
+     * @param f  the dirty frame
+     */
+    private void write (Frame f)
+    {
+        FileChannel ch  = files.get (f.file);
+        ByteBuffer  buf = f.data.duplicate ();
+        long        pos = (long) f.page * pageSize;
+        buf.clear ();
+        try {
+            while (buf.hasRemaining ()) ch.write (buf, pos + buf.position ());
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("BufferPool.write", ex);
+        } // try
+        f.dirty = false;
+        writes++;
+    } // write
+
+    /***************************************************************************
+     * Combine a file identifier and page number into a page table key.
+     * @param file  the identifier of the file
+     * @param page  the page number
+     * @return  the key
+     */
+    private static long key (int file, int page)
+    {
+        return (long) file << 32 | page & 0xffffffffL;
+    } // key
+
+    /***************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        Table movie = new Table ("movie", "title year length genre studioName producerNo",
+                                 "String Integer Integer String String Integer", "title year",
+                                 StorageType.FILE_LIST);
+        for (int i = 0; i < 100000; i++) {
+            movie.insert (new Comparable [] { "Movie" + i, 1900 + i % 120, 60 + i % 120, "genre" + i % 7,
+                                              "studio" + i % 50, i % 1000 });
+        } // for
+        out.println (POOL.stats ());
+        for (int k = 0; k < 2; k++) {
+            POOL.resetStats ();
+            movie.select ("1979 < year & year < 1990");
+            out.println (POOL.stats ());
+        } // for
+        movie.close ();
+    } // main
+
+} // BufferPool class
@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * @file  ColumnList.java
+ *
+ * @author   agent
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+/*******************************************************************************
+ * The ColumnList class keeps the tuples of a table column by column, each in a
+ * primitive array: int [] for Integer, Short and Byte, long [] for Long,
+ * double [] for Double and Float, and char [] for Character.  A String column
+ * holds int codes from a Dictionary, or plain String references once it has
+ * more than DICT_LIMIT distinct values.  This avoids a boxed object per value
+ * and an array per tuple, and it lets selections and projections run as loops
+ * over primitive arrays (see Condition.select and Table.project).  Tuples are
+ * materialized only when they are read through the List interface.
+ */
+public class ColumnList
+       extends AbstractList <Comparable []>
+       implements RandomAccess, Serializable
+{
+    /** The number of distinct values beyond which a String column stops using
+     *  a dictionary.
+     */
+    static final int DICT_LIMIT = 1 << 12;
+
+    /** The attribute domains (data types) of the columns.
+     */
+    private final Class [] domain;
+
+    /** The column vectors, one primitive array (or String []) per attribute.
+     */
+    private final Object [] column;
+
+    /** The dictionary of each dictionary-encoded String column (null otherwise).
+     */
+    private final Dictionary [] dict;
+
+    /** The number of tuples stored.
+     */
+    private int size = 0;
+
+    /** The capacity of the column vectors.
+     */
+    private int capacity;
+
+    /***************************************************************************
+     * Construct an empty column list for the given domains.
+     * @param _domain  the attribute domains (data types)
+     */
+    public ColumnList (Class [] _domain)
+    {
+        domain   = _domain;
+        column   = new Object [domain.length];
+        dict     = new Dictionary [domain.length];
+        capacity = 16;
+        for (int j = 0; j < domain.length; j++) {
+            column [j] = vector (domain [j], capacity);
+            if (domain [j] == String.class) {
+                dict [j]   = new Dictionary ();
+                column [j] = new int [capacity];
+            } // if
+        } // for
+    } // ColumnList
+
+    /***************************************************************************
+     * Add a tuple by appending each of its values to its column vector.
+     * @param tup  the tuple to add
+     * @return  true
+     */
+    public boolean add (Comparable [] tup)
+    {
+        if (size == capacity) grow (capacity << 1);
+        for (int j = 0; j < domain.length; j++) {
+            Object v = column [j];
+            if      (dict [j] != null)       encode (j, (String) tup [j]);
+            else if (v instanceof int [])    ((int []) v) [size]    = ((Number) tup [j]).intValue ();
+            else if (v instanceof long [])   ((long []) v) [size]   = (Long) tup [j];
+            else if (v instanceof double []) ((double []) v) [size] = ((Number) tup [j]).doubleValue ();
+            else if (v instanceof char [])   ((char []) v) [size]   = (Character) tup [j];
+            else                             ((String []) v) [size] = (String) tup [j];
+        } // for
+        size++;
+        modCount++;
+        return true;
+    } // add
+
+    /***************************************************************************
+     * Materialize the ith tuple from the column vectors.
+     * @param i  the index of the tuple
+     * @return  the ith tuple
+     */
+    public Comparable [] get (int i)
+    {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException ("ColumnList.get: " + i);
+        Comparable [] tup = new Comparable [domain.length];
+        for (int j = 0; j < domain.length; j++) tup [j] = value (j, i);
+        return tup;
+    } // get
+
+    /***************************************************************************
+     * Return the number of tuples stored.
+     * @return  the size of the list
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /***************************************************************************
+     * Return the vector for column j of an int-valued domain (Integer, Short, Byte).
+     * @param j  the column position
+     * @return  the column vector (only the first size () entries are valid)
+     */
+    int [] ints (int j)
+    {
+        return (int []) column [j];
+    } // ints
+
+    /***************************************************************************
+     * Return the vector for column j of a Long domain.
+     * @param j  the column position
+     * @return  the column vector (only the first size () entries are valid)
+     */
+    long [] longs (int j)
+    {
+        return (long []) column [j];
+    } // longs
+
+    /***************************************************************************
+     * Return the vector for column j of a real domain (Double, Float).
+     * @param j  the column position
+     * @return  the column vector (only the first size () entries are valid)
+     */
+    double [] doubles (int j)
+    {
+        return (double []) column [j];
+    } // doubles
+
+    /***************************************************************************
+     * Return the vector for column j of a Character domain.
+     * @param j  the column position
+     * @return  the column vector (only the first size () entries are valid)
+     */
+    char [] chars (int j)
+    {
+        return (char []) column [j];
+    } // chars
+
+    /***************************************************************************
+     * Return the vector for column j of a String domain that is not dictionary
+     * encoded.
+     * @param j  the column position
+     * @return  the column vector (only the first size () entries are valid)
+     */
+    String [] strings (int j)
+    {
+        return (String []) column [j];
+    } // strings
+
+    /***************************************************************************
+     * Return the dictionary of String column j, whose ranks compare as the
+     * strings coded in ints (j) do (see Dictionary.rank).
+     * @param j  the column position
+     * @return  the dictionary, or null if the column holds plain strings
+     */
+    Dictionary dictionary (int j)
+    {
+        return dict [j];
+    } // dictionary
+
+    /***************************************************************************
+     * Fill this empty list with the given rows of another column list (with the
+     * same domains), copying values vector to vector without materializing
+     * tuples.  Dictionary codes are copied along with a copy of the dictionary.
+     * @param src   the column list to copy from
+     * @param rows  the positions of the rows to copy, in order
+     */
+    void gather (ColumnList src, BitSet rows)
+    {
+        int n = rows.cardinality ();
+        for (int j = 0; j < domain.length; j++) adopt (j, src, j);
+        if (n > capacity) grow (n);
+        for (int j = 0; j < domain.length; j++) {
+            Object from = src.column [j], to = column [j];
+            int    k    = size;
+            for (int i = rows.nextSetBit (0); i >= 0; i = rows.nextSetBit (i + 1)) {
+                if      (to instanceof int [])    ((int []) to) [k++]    = ((int []) from) [i];
+                else if (to instanceof long [])   ((long []) to) [k++]   = ((long []) from) [i];
+                else if (to instanceof double []) ((double []) to) [k++] = ((double []) from) [i];
+                else if (to instanceof char [])   ((char []) to) [k++]   = ((char []) from) [i];
+                else                              ((String []) to) [k++] = ((String []) from) [i];
+            } // for
+        } // for
+        size += n;
+        modCount++;
+    } // gather
+
+    /***************************************************************************
+     * Fill this empty list with all rows of the given columns of another column
+     * list, copying each column vector in bulk.
+     * @param src     the column list to copy from
+     * @param colPos  the positions in src of this list's columns
+     */
+    void project (ColumnList src, int [] colPos)
+    {
+        int n = src.size;
+        for (int j = 0; j < colPos.length; j++) adopt (j, src, colPos [j]);
+        if (n > capacity) grow (n);
+        for (int j = 0; j < colPos.length; j++) {
+            System.arraycopy (src.column [colPos [j]], 0, column [j], size, n);
+        } // for
+        size += n;
+        modCount++;
+    } // project
+
+    /***************************************************************************
+     * Return the value in column j of row i, boxed in the column's domain.
+     * @param j  the column position
+     * @param i  the row position
+     * @return  the value
+     */
+    private Comparable value (int j, int i)
+    {
+        Object v = column [j];
+        switch (domain [j].getSimpleName ()) {
+        case "Integer":   return ((int []) v) [i];
+        case "Short":     return (short) ((int []) v) [i];
+        case "Byte":      return (byte) ((int []) v) [i];
+        case "Long":      return ((long []) v) [i];
+        case "Double":    return ((double []) v) [i];
+        case "Float":     return (float) ((double []) v) [i];
+        case "Character": return ((char []) v) [i];
+        default:          return dict [j] != null ? dict [j].decode (((int []) v) [i])
+                                                  : ((String []) v) [i];
+        } // switch
+    } // value
+
+    /***************************************************************************
+     * Encode a String value into column j at the end of the list, switching the
+     * column to plain strings if its dictionary grows past DICT_LIMIT.
+     * @param j  the column position
+     * @param s  the value to add
+     */
+    private void encode (int j, String s)
+    {
+        ((int []) column [j]) [size] = dict [j].encode (s);
+        if (dict [j].size () <= DICT_LIMIT) return;
+
+        int []    code  = (int []) column [j];
+        String [] plain = new String [capacity];
+        for (int i = 0; i <= size; i++) plain [i] = dict [j].decode (code [i]);
+        column [j] = plain;
+        dict [j]   = null;
+    } // encode
+
+    /***************************************************************************
+     * Give column j of this empty list the representation of column k of src:
+     * the same kind of vector and, for a dictionary-encoded column, a copy of
+     * its dictionary.
+     * @param j    the column position in this list
+     * @param src  the column list to copy from
+     * @param k    the column position in src
+     */
+    private void adopt (int j, ColumnList src, int k)
+    {
+        if (size > 0) throw new IllegalStateException ("ColumnList: can only fill an empty list");
+        if (domain [j] != String.class) return;
+        Dictionary d = src.dictionary (k);
+        dict [j]   = d == null ? null : new Dictionary (d);
+        column [j] = d == null ? new String [capacity] : new int [capacity];
+    } // adopt
+
+    /***************************************************************************
+     * Grow every column vector to the new capacity.
+     * @param newCapacity  the new number of rows the vectors can hold
+     */
+    private void grow (int newCapacity)
+    {
+        for (int j = 0; j < domain.length; j++) {
+            Object v = column [j];
+            if      (v instanceof int [])    column [j] = Arrays.copyOf ((int []) v, newCapacity);
+            else if (v instanceof long [])   column [j] = Arrays.copyOf ((long []) v, newCapacity);
+            else if (v instanceof double []) column [j] = Arrays.copyOf ((double []) v, newCapacity);
+            else if (v instanceof char [])   column [j] = Arrays.copyOf ((char []) v, newCapacity);
+            else                             column [j] = Arrays.copyOf ((String []) v, newCapacity);
+        } // for
+        capacity = newCapacity;
+    } // grow
+
+    /***************************************************************************
+     * Make an empty column vector for the given domain.
+     * @param dom  the domain of the column
+     * @param n    the capacity of the vector
+     * @return  the primitive array (or String []) holding the column
+     */
+    private static Object vector (Class dom, int n)
+    {
+        switch (dom.getSimpleName ()) {
+        case "Integer": case "Short": case "Byte": return new int [n];
+        case "Long":                               return new long [n];
+        case "Double": case "Float":               return new double [n];
+        case "Character":                          return new char [n];
+        case "String":                             return new String [n];
+        default:
+            throw new IllegalArgumentException ("ColumnList: unsupported domain " + dom);
+        } // switch
+    } // vector
+
+} // ColumnList class
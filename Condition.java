@@ -0,0 +1,554 @@
+/*******************************************************************************
+ * @file  Condition.java
+ *
+ * @author   agent
+ */
+
+import static java.lang.System.out;
+import java.util.*;
+
+/*******************************************************************************
+ * The Condition class is a selection condition compiled from its postfix form
+ * into a tree of predicates.  Attribute names are resolved to column positions
+ * and literals are converted to the column's domain once, when the condition is
+ * compiled, and each comparison is specialized for its domain, so evaluating a
+ * tuple does no parsing, lookups, boxing or allocation.
+ */
+abstract class Condition
+{
+    /** Comparison operator codes
+     */
+    static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5;
+
+    /** The condition that holds for every tuple
+     */
+    static final Condition TRUE = new Const (true);
+
+    /***************************************************************************
+     * Determine whether the tuple satisfies this condition.
+     * @param tup  the tuple to check
+     * @return  whether to keep the tuple
+     */
+    abstract boolean eval (Comparable [] tup);
+
+    /***************************************************************************
+     * Find the rows of a columnar table that satisfy this condition.  This
+     * fallback materializes each row; comparisons override it with loops over
+     * the primitive column vectors, and conjunctions and disjunctions combine
+     * the row sets of their operands.
+     * @param cl  the column list holding the table's tuples
+     * @return  the positions of the satisfying rows
+     */
+    BitSet select (ColumnList cl)
+    {
+        int    n    = cl.size ();
+        BitSet rows = new BitSet (n);
+        for (int i = 0; i < n; i++) if (eval (cl.get (i))) rows.set (i);
+        return rows;
+    } // select
+
+    /***************************************************************************
+     * Find the bounds this condition places on the given column.  Only the
+     * comparisons of that column with a literal that are conjoined at the top
+     * level are used, so every satisfying tuple lies within the bounds, but not
+     * every tuple within them satisfies the condition.
+     * @param col  the column position
+     * @return  the bounds on the column, or null if it is unconstrained
+     */
+    Range range (int col)
+    {
+        Range r = new Range ();
+        bound (col, r);
+        return r.lo == null && r.hi == null ? null : r;
+    } // range
+
+    /***************************************************************************
+     * Tighten the range by the constraints this condition places on the column.
+     * Overridden by conjunctions and comparisons; other conditions add nothing.
+     * @param col  the column position
+     * @param r    the range to tighten
+     */
+    void bound (int col, Range r) { }
+
+    /***************************************************************************
+     * Compile a postfix condition (see Table.infix2postfix) over the given schema.
+     * Attribute names are matched ignoring case; other tokens are literals, and
+     * every comparison must have an attribute on at least one side.
+     * @param postfix    the tokenized postfix condition (null means always true)
+     * @param attribute  the attribute names of the table
+     * @param domain     the attribute domains of the table
+     * @return  the compiled condition, or null if the condition is ill-formed
+     *          (e.g., it compares two columns with different domains, or two
+     *          literals, as when an attribute name is misspelled)
+     */
+    static Condition compile (String [] postfix, String [] attribute, Class [] domain)
+    {
+        if (postfix == null) return TRUE;
+
+        Deque <Object> s = new ArrayDeque <> ();            // operands are Integer columns,
+        for (String token : postfix) {                      // String literals or Conditions
+            if (token == null) continue;
+            if (token.equals ("&") || token.equals ("|")) {
+                Object r = s.poll (), l = s.poll ();
+                if (! (l instanceof Condition) || ! (r instanceof Condition)) return illFormed (token);
+                s.push (token.equals ("&") ? new And ((Condition) l, (Condition) r)
+                                           : new Or ((Condition) l, (Condition) r));
+            } else if (opCode (token) >= 0) {
+                Object r = s.poll (), l = s.poll ();
+                if (l == null || r == null || l instanceof Condition || r instanceof Condition) {
+                    return illFormed (token);
+                } // if
+                if (l instanceof String && r instanceof String) {
+                    return illFormed (token + " (neither " + l + " nor " + r + " is an attribute)");
+                } // if
+                if (l instanceof Integer && r instanceof Integer && domain [(Integer) l] != domain [(Integer) r]) {
+                    return illFormed (token + " (" + attribute [(Integer) l] + " and " + attribute [(Integer) r]
+                                    + " have different domains)");
+                } // if
+                Condition c = comparison (l, opCode (token), r, domain);
+                if (c == null) return illFormed (token);
+                s.push (c);
+            } else {
+                int col = -1;
+                for (int j = 0; j < attribute.length; j++) {
+                    if (attribute [j].equalsIgnoreCase (token)) { col = j; break; }
+                } // for
+                s.push (col >= 0 ? (Object) Integer.valueOf (col) : token);
+            } // if
+        } // for
+
+        if (s.size () != 1 || ! (s.peek () instanceof Condition)) return illFormed ("end of condition");
+        return (Condition) s.pop ();
+    } // compile
+
+    /***************************************************************************
+     * Build the predicate for one comparison, normalizing it so that a column is
+     * on the left (e.g., "1979 < year" becomes "year > 1979").
+     * @param l       the left operand (column position or literal)
+     * @param op      the comparison operator code
+     * @param r       the right operand (column position or literal, not both
+     *                operands literals)
+     * @param domain  the attribute domains of the table
+     * @return  the predicate, or null if a literal does not fit the column's domain
+     */
+    @SuppressWarnings("unchecked")
+    private static Condition comparison (Object l, int op, Object r, Class [] domain)
+    {
+        if (l instanceof Integer && r instanceof Integer) return new ColCmp ((Integer) l, op, (Integer) r);
+
+        if (l instanceof String) return comparison (r, flip (op), l, domain);
+
+        int        col = (Integer) l;
+        Comparable val = convert (domain [col], (String) r);
+        if (val == null) return null;
+
+        switch (domain [col].getSimpleName ()) {
+        case "Integer": case "Short": case "Byte":
+            return new IntCmp (col, op, val);
+        case "Character":
+            return new CharCmp (col, op, val);
+        case "Long":
+            return new LongCmp (col, op, val);
+        case "Double": case "Float":
+            return new DoubleCmp (col, op, val);
+        case "String":
+            return new StrCmp (col, op, val);
+        default:
+            return new ObjCmp (col, op, val);
+        } // switch
+    } // comparison
+
+    /***************************************************************************
+     * Convert a literal to a value in the given domain.
+     * @param dom    the domain (e.g., Integer.class)
+     * @param value  the literal's string representation
+     * @return  the converted value, or null if it cannot be converted
+     */
+    @SuppressWarnings("unchecked")
+    static Comparable convert (Class dom, String value)
+    {
+        if (dom == Character.class) return value.length () == 1 ? value.charAt (0) : null;
+        return String2Type.cons (dom, value);
+    } // convert
+
+    /***************************************************************************
+     * Report an ill-formed condition.
+     * @param where  the token at which the problem was found
+     * @return  null
+     */
+    private static Condition illFormed (String where)
+    {
+        out.println ("Condition.compile: error - ill-formed condition at " + where);
+        return null;
+    } // illFormed
+
+    /***************************************************************************
+     * Return the code for a comparison operator.
+     * @param op  the operator token
+     * @return  the operator code, or -1 if op is not a comparison operator
+     */
+    static int opCode (String op)
+    {
+        switch (op) {
+        case "==": return EQ;
+        case "!=": return NE;
+        case "<":  return LT;
+        case "<=": return LE;
+        case ">":  return GT;
+        case ">=": return GE;
+        default:   return -1;
+        } // switch
+    } // opCode
+
+    /***************************************************************************
+     * Return the operator obtained by swapping the operands.
+     * @param op  the operator code
+     * @return  the mirrored operator code
+     */
+    static int flip (int op)
+    {
+        switch (op) {
+        case LT: return GT;
+        case LE: return GE;
+        case GT: return LT;
+        case GE: return LE;
+        default: return op;
+        } // switch
+    } // flip
+
+    /***************************************************************************
+     * Test the result of a three-way comparison against an operator.
+     * @param c   the comparison result (negative, zero or positive)
+     * @param op  the operator code
+     * @return  whether the comparison satisfies the operator
+     */
+    static boolean test (int c, int op)
+    {
+        switch (op) {
+        case EQ: return c == 0;
+        case NE: return c != 0;
+        case LT: return c <  0;
+        case LE: return c <= 0;
+        case GT: return c >  0;
+        default: return c >= 0;
+        } // switch
+    } // test
+
+    /***************************************************************************
+     * The Range class holds lower and upper bounds on a column (null when open).
+     */
+    static final class Range
+    {
+        Comparable lo, hi;
+        boolean    loInc, hiInc;
+
+        /** Raise the lower bound to v if that makes it tighter
+         */
+        @SuppressWarnings("unchecked")
+        void lower (Comparable v, boolean inc)
+        {
+            int c = lo == null ? 1 : v.compareTo (lo);
+            if (c > 0 || c == 0 && ! inc) { lo = v; loInc = inc; }
+        } // lower
+
+        /** Lower the upper bound to v if that makes it tighter
+         */
+        @SuppressWarnings("unchecked")
+        void upper (Comparable v, boolean inc)
+        {
+            int c = hi == null ? -1 : v.compareTo (hi);
+            if (c < 0 || c == 0 && ! inc) { hi = v; hiInc = inc; }
+        } // upper
+
+        /** Determine whether the range holds the single value lo
+         */
+        @SuppressWarnings("unchecked")
+        boolean isPoint ()
+        {
+            return lo != null && hi != null && loInc && hiInc && lo.compareTo (hi) == 0;
+        } // isPoint
+
+        /** Determine whether v lies beyond the upper bound
+         */
+        @SuppressWarnings("unchecked")
+        boolean above (Comparable v)
+        {
+            if (hi == null) return false;
+            int c = v.compareTo (hi);
+            return c > 0 || c == 0 && ! hiInc;
+        } // above
+
+    } // Range class
+
+    /***************************************************************************
+     * The And class is the conjunction of two conditions.
+     */
+    static final class And extends Condition
+    {
+        final Condition left, right;
+
+        And (Condition _left, Condition _right) { left = _left; right = _right; }
+
+        boolean eval (Comparable [] tup) { return left.eval (tup) && right.eval (tup); }
+
+        BitSet select (ColumnList cl) { BitSet rows = left.select (cl); rows.and (right.select (cl)); return rows; }
+
+        void bound (int _col, Range r) { left.bound (_col, r); right.bound (_col, r); }
+
+    } // And class
+
+    /***************************************************************************
+     * The Or class is the disjunction of two conditions.
+     */
+    static final class Or extends Condition
+    {
+        final Condition left, right;
+
+        Or (Condition _left, Condition _right) { left = _left; right = _right; }
+
+        boolean eval (Comparable [] tup) { return left.eval (tup) || right.eval (tup); }
+
+        BitSet select (ColumnList cl) { BitSet rows = left.select (cl); rows.or (right.select (cl)); return rows; }
+
+    } // Or class
+
+    /***************************************************************************
+     * The Const class is a condition whose value does not depend on the tuple.
+     */
+    static final class Const extends Condition
+    {
+        final boolean value;
+
+        Const (boolean _value) { value = _value; }
+
+        boolean eval (Comparable [] tup) { return value; }
+
+        BitSet select (ColumnList cl)
+        {
+            BitSet rows = new BitSet (cl.size ());
+            if (value) rows.set (0, cl.size ());
+            return rows;
+        } // select
+
+    } // Const class
+
+    /***************************************************************************
+     * The Cmp class compares the value in column col with a literal by op.  The
+     * literal is kept in the column's domain; subclasses unbox it once.
+     */
+    static abstract class Cmp extends Condition
+    {
+        final int        col, op;
+        final Comparable literal;
+
+        Cmp (int _col, int _op, Comparable _literal) { col = _col; op = _op; literal = _literal; }
+
+        void bound (int _col, Range r)
+        {
+            if (_col != col) return;
+            if (op == EQ || op == GT || op == GE) r.lower (literal, op != GT);
+            if (op == EQ || op == LT || op == LE) r.upper (literal, op != LT);
+        } // bound
+
+    } // Cmp class
+
+    /***************************************************************************
+     * The IntCmp class compares Integer, Short or Byte columns.
+     */
+    static final class IntCmp extends Cmp
+    {
+        final int value;
+
+        IntCmp (int _col, int _op, Comparable _literal)
+        {
+            super (_col, _op, _literal);
+            value = ((Number) _literal).intValue ();
+        } // IntCmp
+
+        boolean eval (Comparable [] tup)
+        {
+            return test (Integer.compare (((Number) tup [col]).intValue (), value), op);
+        } // eval
+
+        BitSet select (ColumnList cl)
+        {
+            int [] v    = cl.ints (col);
+            int    n    = cl.size ();
+            BitSet rows = new BitSet (n);
+            for (int i = 0; i < n; i++) if (test (Integer.compare (v [i], value), op)) rows.set (i);
+            return rows;
+        } // select
+
+    } // IntCmp class
+
+    /***************************************************************************
+     * The CharCmp class compares Character columns.
+     */
+    static final class CharCmp extends Cmp
+    {
+        final char value;
+
+        CharCmp (int _col, int _op, Comparable _literal)
+        {
+            super (_col, _op, _literal);
+            value = (Character) _literal;
+        } // CharCmp
+
+        boolean eval (Comparable [] tup)
+        {
+            return test (Character.compare ((Character) tup [col], value), op);
+        } // eval
+
+        BitSet select (ColumnList cl)
+        {
+            char [] v    = cl.chars (col);
+            int     n    = cl.size ();
+            BitSet  rows = new BitSet (n);
+            for (int i = 0; i < n; i++) if (test (Character.compare (v [i], value), op)) rows.set (i);
+            return rows;
+        } // select
+
+    } // CharCmp class
+
+    /***************************************************************************
+     * The LongCmp class compares Long columns.
+     */
+    static final class LongCmp extends Cmp
+    {
+        final long value;
+
+        LongCmp (int _col, int _op, Comparable _literal)
+        {
+            super (_col, _op, _literal);
+            value = (Long) _literal;
+        } // LongCmp
+
+        boolean eval (Comparable [] tup)
+        {
+            return test (Long.compare ((Long) tup [col], value), op);
+        } // eval
+
+        BitSet select (ColumnList cl)
+        {
+            long [] v    = cl.longs (col);
+            int     n    = cl.size ();
+            BitSet  rows = new BitSet (n);
+            for (int i = 0; i < n; i++) if (test (Long.compare (v [i], value), op)) rows.set (i);
+            return rows;
+        } // select
+
+    } // LongCmp class
+
+    /***************************************************************************
+     * The DoubleCmp class compares Double or Float columns (a Float widens to a
+     * double exactly, so the ordering matches Float.compareTo).
+     */
+    static final class DoubleCmp extends Cmp
+    {
+        final double value;
+
+        DoubleCmp (int _col, int _op, Comparable _literal)
+        {
+            super (_col, _op, _literal);
+            value = ((Number) _literal).doubleValue ();
+        } // DoubleCmp
+
+        boolean eval (Comparable [] tup)
+        {
+            return test (Double.compare (((Number) tup [col]).doubleValue (), value), op);
+        } // eval
+
+        BitSet select (ColumnList cl)
+        {
+            double [] v    = cl.doubles (col);
+            int       n    = cl.size ();
+            BitSet    rows = new BitSet (n);
+            for (int i = 0; i < n; i++) if (test (Double.compare (v [i], value), op)) rows.set (i);
+            return rows;
+        } // select
+
+    } // DoubleCmp class
+
+    /***************************************************************************
+     * The StrCmp class compares String columns.  On a dictionary-encoded
+     * column it compares the ranks of the codes, which are in value order: a
+     * literal found in the dictionary compares by its rank, and one that is
+     * absent by its insertion point.
+     */
+    static final class StrCmp extends Cmp
+    {
+        final String value;
+
+        StrCmp (int _col, int _op, Comparable _literal)
+        {
+            super (_col, _op, _literal);
+            value = (String) _literal;
+        } // StrCmp
+
+        boolean eval (Comparable [] tup)
+        {
+            return test (((String) tup [col]).compareTo (value), op);
+        } // eval
+
+        BitSet select (ColumnList cl)
+        {
+            Dictionary dict = cl.dictionary (col);
+            if (dict != null) {
+                int [] code = cl.ints (col);
+                int    n    = cl.size ();
+                int    k    = dict.find (value);
+                int    o    = op;
+                if (k < 0) {                                  // absent: no code equals it
+                    k = -k - 1;
+                    if (op == EQ || op == NE) return new Const (op == NE).select (cl);
+                    o = op == LT || op == LE ? LT : GE;
+                } // if
+                BitSet rows = new BitSet (n);
+                for (int i = 0; i < n; i++) if (test (Integer.compare (dict.rank (code [i]), k), o)) rows.set (i);
+                return rows;
+            } // if
+
+            String [] v    = cl.strings (col);
+            int       n    = cl.size ();
+            BitSet    rows = new BitSet (n);
+            for (int i = 0; i < n; i++) if (test (v [i].compareTo (value), op)) rows.set (i);
+            return rows;
+        } // select
+
+    } // StrCmp class
+
+    /***************************************************************************
+     * The ObjCmp class compares columns of any other Comparable domain.
+     */
+    static final class ObjCmp extends Cmp
+    {
+        ObjCmp (int _col, int _op, Comparable _literal) { super (_col, _op, _literal); }
+
+        @SuppressWarnings("unchecked")
+        boolean eval (Comparable [] tup)
+        {
+            return test (tup [col].compareTo (literal), op);
+        } // eval
+
+    } // ObjCmp class
+
+    /***************************************************************************
+     * The ColCmp class compares two columns of the same tuple (compile checks
+     * that their domains are the same).
+     */
+    static final class ColCmp extends Condition
+    {
+        final int col1, op, col2;
+
+        ColCmp (int _col1, int _op, int _col2) { col1 = _col1; op = _op; col2 = _col2; }
+
+        @SuppressWarnings("unchecked")
+        boolean eval (Comparable [] tup)
+        {
+            return test (tup [col1].compareTo (tup [col2]), op);
+        } // eval
+
+    } // ColCmp class
+
+} // Condition class
+
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * @file  Dictionary.java
+ *
+ * @author   agent
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+/*******************************************************************************
+ * The Dictionary class encodes the distinct values of a String column as int
+ * codes (see ColumnList).  Codes are handed out as values arrive and never
+ * change, so the code vector is only ever appended to.  Alongside the codes the
+ * dictionary keeps the rank of each value in value order, updated as values
+ * are added, so that comparing the ranks of two codes gives the same result as
+ * comparing their strings.  Reads never modify the dictionary.
+ */
+public class Dictionary
+       implements Serializable
+{
+    /** The values indexed by their codes.
+     */
+    private final ArrayList <String> value;
+
+    /** The code of each value.
+     */
+    private final HashMap <String, Integer> code;
+
+    /** The values in sorted order.
+     */
+    private final ArrayList <String> sorted;
+
+    /** The rank of each code's value in sorted order (only the first size ()
+     *  entries are valid).
+     */
+    private int [] rank;
+
+    /***************************************************************************
+     * Construct an empty dictionary.
+     */
+    public Dictionary ()
+    {
+        value  = new ArrayList <> ();
+        code   = new HashMap <> ();
+        sorted = new ArrayList <> ();
+        rank   = new int [16];
+    } // Dictionary
+
+    /***************************************************************************
+     * Construct a copy of the given dictionary.
+     * @param dict  the dictionary to copy
+     */
+    public Dictionary (Dictionary dict)
+    {
+        value  = new ArrayList <> (dict.value);
+        code   = new HashMap <> (dict.code);
+        sorted = new ArrayList <> (dict.sorted);
+        rank   = dict.rank.clone ();
+    } // Dictionary
+
+    /***************************************************************************
+     * Return the code for the value, adding the value if it is new.  A new
+     * value takes its place in sorted order, moving up the rank of every value
+     * after it.
+     * @param v  the value to encode
+     * @return  its code
+     */
+    int encode (String v)
+    {
+        Integer c = code.get (v);
+        if (c != null) return c;
+        int n = value.size ();
+        int r = -Collections.binarySearch (sorted, v) - 1;
+        if (n == rank.length) rank = Arrays.copyOf (rank, n << 1);
+        for (int k = 0; k < n; k++) if (rank [k] >= r) rank [k]++;
+        rank [n] = r;
+        sorted.add (r, v);
+        value.add (v);
+        code.put (v, n);
+        return n;
+    } // encode
+
+    /***************************************************************************
+     * Return the value with the given code.
+     * @param c  the code to decode
+     * @return  its value
+     */
+    String decode (int c)
+    {
+        return value.get (c);
+    } // decode
+
+    /***************************************************************************
+     * Return the rank in value order of the value with the given code.
+     * @param c  the code
+     * @return  the number of values less than its value
+     */
+    int rank (int c)
+    {
+        return rank [c];
+    } // rank
+
+    /***************************************************************************
+     * Return the number of distinct values.
+     * @return  the size of the dictionary
+     */
+    int size ()
+    {
+        return value.size ();
+    } // size
+
+    /***************************************************************************
+     * Find the rank of a value, in the manner of Arrays.binarySearch.
+     * @param v  the value to find
+     * @return  its rank if present, otherwise (-(insertion point) - 1), where
+     *          the insertion point is the number of values less than v
+     */
+    int find (String v)
+    {
+        Integer c = code.get (v);
+        return c != null ? rank [c] : Collections.binarySearch (sorted, v);
+    } // find
+
+} // Dictionary class
@@ -0,0 +1,18 @@
+/*******************************************************************************
+ * @file  Durability.java
+ *
+ * @author   agent
+ */
+
+/*******************************************************************************
+ * The Durability enumeration lists when a logged insert reaches the disk (see
+ * WriteAheadLog): SYNC forces the log after every insert, GROUP forces once for
+ * a batch of concurrent inserts before any of them returns, and ASYNC returns at
+ * once and forces the log in the background, so a crash may lose the last few
+ * inserts.
+ */
+public enum Durability
+{
+    SYNC, GROUP, ASYNC
+
+} // Durability enum
@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * @file  ExtHash.java
+ *
+ * @author   agent
+ */
+
+import java.io.*;
+import static java.lang.System.out;
+import java.util.*;
+
+/*******************************************************************************
+ * The ExtHash class provides hash maps that use the Extendible Hashing algorithm.
+ * A directory of 2^globalDepth entries, indexed by the low bits of the key's
+ * hash, points to buckets; a bucket with local depth d is shared by the
+ * 2^(globalDepth - d) entries agreeing on its low d bits.  A full bucket is split
+ * in two on its next hash bit, doubling the directory only when the bucket was
+ * already at the global depth, so a lookup costs one directory access and one
+ * bucket access for any hashes that spread.  The directory stops doubling at
+ * 2^MAX_DEPTH entries; beyond that a full bucket chains to overflow buckets,
+ * so keys whose hashes collide cannot blow up the directory.  Buckets hold a
+ * fixed number of slots, so each maps onto a fixed-size page should the
+ * structure be moved to disk.
+ */
+public class ExtHash <K, V>
+       extends AbstractMap <K, V>
+       implements Serializable
+{
+    /** The default number of slots (for key-value pairs) per bucket.
+     */
+    public static final int SLOTS = 16;
+
+    /** The depth beyond which buckets chain instead of splitting, capping the
+     *  directory at 2^20 references (8 MB), reached when more than a bucketful
+     *  of keys share their low 20 hash bits or the map outgrows 2^20 buckets.
+     */
+    private static final int MAX_DEPTH = 20;
+
+    /** The number of slots per bucket.
+     */
+    private final int slots;
+
+    /***************************************************************************
+     * The Bucket class holds up to 'slots' key-value pairs whose hashes agree
+     * on their low localDepth bits.
+     */
+    private static final class Bucket
+    {
+        int            nKeys;
+        int            localDepth;
+        final Object [] key;
+        final Object [] value;
+        Bucket         next;                         // overflow, only at MAX_DEPTH
+
+        Bucket (int slots, int depth)
+        {
+            key        = new Object [slots];
+            value      = new Object [slots];
+            localDepth = depth;
+        } // Bucket
+
+    } // Bucket class
+
+    /** The directory mapping the low globalDepth hash bits to buckets.
+     */
+    private transient Bucket [] dir;
+
+    /** The number of hash bits used to index the directory.
+     */
+    private transient int globalDepth;
+
+    /** The number of entries in the map.
+     */
+    private transient int size;
+
+    /***************************************************************************
+     * Construct an empty hash map with the default bucket size.
+     */
+    public ExtHash ()
+    {
+        this (SLOTS);
+    } // ExtHash
+
+    /***************************************************************************
+     * Construct an empty hash map whose buckets hold the given number of slots.
+     * @param _slots  the number of key-value pairs per bucket
+     */
+    public ExtHash (int _slots)
+    {
+        if (_slots < 1) throw new IllegalArgumentException ("ExtHash: slots must be positive");
+        slots = _slots;
+        clear ();
+    } // ExtHash
+
+    /***************************************************************************
+     * Remove all entries from the map.
+     */
+    public void clear ()
+    {
+        dir         = new Bucket [] { new Bucket (slots, 0) };
+        globalDepth = 0;
+        size        = 0;
+    } // clear
+
+    /***************************************************************************
+     * Return the number of entries in the map.
+     * @return  the size of the map
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /***************************************************************************
+     * Return the value associated with the key.
+     * @param key  the key used for look up
+     * @return  the value associated with the key, or null if absent
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        int h = hash (key);
+        for (Bucket b = dir [h & (dir.length - 1)]; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                if (key.equals (b.key [j])) return (V) b.value [j];
+            } // for
+        } // for
+        return null;
+    } // get
+
+    /***************************************************************************
+     * Determine whether the map contains the key.
+     * @param key  the key to look for
+     * @return  whether an entry with that key exists
+     */
+    public boolean containsKey (Object key)
+    {
+        int h = hash (key);
+        for (Bucket b = dir [h & (dir.length - 1)]; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                if (key.equals (b.key [j])) return true;
+            } // for
+        } // for
+        return false;
+    } // containsKey
+
+    /***************************************************************************
+     * Put the key-value pair in the hash map, splitting the target bucket (and
+     * doubling the directory if needed) until it has room.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the value previously associated with the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put (K key, V value)
+    {
+        if (key == null) throw new NullPointerException ("ExtHash.put: null key");
+
+        int h = hash (key);
+        for (Bucket b = dir [h & (dir.length - 1)]; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                if (key.equals (b.key [j])) {
+                    V old = (V) b.value [j];
+                    b.value [j] = value;
+                    return old;
+                } // if
+            } // for
+        } // for
+
+        Bucket b = dir [h & (dir.length - 1)];
+        while (b.nKeys == slots && b.localDepth < MAX_DEPTH) {
+            split (b);
+            b = dir [h & (dir.length - 1)];
+        } // while
+        while (b.nKeys == slots) {                          // identical hashes: chain
+            if (b.next == null) b.next = new Bucket (slots, b.localDepth);
+            b = b.next;
+        } // while
+        b.key [b.nKeys]     = key;
+        b.value [b.nKeys++] = value;
+        size++;
+        return null;
+    } // put
+
+    /***************************************************************************
+     * Return the set of entries, read bucket by bucket.  A bucket is reached
+     * from its first directory entry, the one whose index is below 2^localDepth.
+     * @return  the entry set view of the map
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <K, V>> () {
+            public int size () { return size; }
+
+            @SuppressWarnings("unchecked")
+            public Iterator <Map.Entry <K, V>> iterator ()
+            {
+                return new Iterator <Map.Entry <K, V>> () {
+                    int    i = 0;
+                    Bucket b = dir [0];
+                    int    j = 0;
+
+                    public boolean hasNext ()
+                    {
+                        while (b != null && j >= b.nKeys) {
+                            b = b.next;
+                            j = 0;
+                            while (b == null && ++i < dir.length) {
+                                if (i < (1 << dir [i].localDepth)) b = dir [i];
+                            } // while
+                        } // while
+                        return b != null;
+                    } // hasNext
+
+                    public Map.Entry <K, V> next ()
+                    {
+                        if (! hasNext ()) throw new NoSuchElementException ();
+                        Map.Entry <K, V> e = new SimpleImmutableEntry <> ((K) b.key [j], (V) b.value [j]);
+                        j++;
+                        return e;
+                    } // next
+                };
+            } // iterator
+        };
+    } // entrySet
+
+    /***************************************************************************
+     * Split a full bucket on hash bit localDepth, doubling the directory first
+     * if the bucket is already at the global depth.
+     * @param b  the bucket to split
+     */
+    private void split (Bucket b)
+    {
+        if (b.localDepth == globalDepth) {                  // double the directory
+            Bucket [] d = Arrays.copyOf (dir, dir.length << 1);
+            System.arraycopy (dir, 0, d, dir.length, dir.length);
+            dir = d;
+            globalDepth++;
+        } // if
+
+        int    bit = 1 << b.localDepth;
+        Bucket lo  = new Bucket (slots, b.localDepth + 1);
+        Bucket hi  = new Bucket (slots, b.localDepth + 1);
+        for (int j = 0; j < b.nKeys; j++) {
+            Bucket t = (hash (b.key [j]) & bit) == 0 ? lo : hi;
+            t.key [t.nKeys]     = b.key [j];
+            t.value [t.nKeys++] = b.value [j];
+        } // for
+
+        int base = hash (b.key [0]) & (bit - 1);            // dir entries sharing b's low bits
+        for (int i = base; i < dir.length; i += bit) dir [i] = (i & bit) == 0 ? lo : hi;
+    } // split
+
+    /***************************************************************************
+     * Return the hash value for the key, spreading the high bits into the low
+     * bits used to index the directory.
+     * @param key  the key to hash
+     * @return  a non-negative hash value
+     */
+    private static int hash (Object key)
+    {
+        int h = key.hashCode ();
+        return (h ^ (h >>> 16)) & 0x7fffffff;
+    } // hash
+
+    /***************************************************************************
+     * Write the map as its size followed by its entries.
+     * @param oos  the stream to write to
+     */
+    private void writeObject (ObjectOutputStream oos) throws IOException
+    {
+        oos.defaultWriteObject ();
+        oos.writeInt (size);
+        for (Map.Entry <K, V> e : entrySet ()) {
+            oos.writeObject (e.getKey ());
+            oos.writeObject (e.getValue ());
+        } // for
+    } // writeObject
+
+    /***************************************************************************
+     * Read the map written by writeObject.
+     * @param ois  the stream to read from
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject (ObjectInputStream ois) throws IOException, ClassNotFoundException
+    {
+        ois.defaultReadObject ();
+        clear ();
+        int n = ois.readInt ();
+        for (int i = 0; i < n; i++) put ((K) ois.readObject (), (V) ois.readObject ());
+    } // readObject
+
+    /***************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        ExtHash <Integer, Integer> ht = new ExtHash <> (4);
+        HashMap <Integer, Integer> hm = new HashMap <> ();
+        Random rand = new Random (7);
+        for (int i = 0; i < 100000; i++) {
+            int k = rand.nextInt (50000) << 8;                 // skewed: low bits all zero
+            if (! Objects.equals (ht.put (k, i), hm.put (k, i))) out.println ("put mismatch at " + k);
+        } // for
+        boolean found = true;
+        for (int k = 0; k < 50000; k++) found &= Objects.equals (ht.get (k << 8), hm.get (k << 8));
+        out.println ("size:   " + ht.size () + " (HashMap " + hm.size () + ")");
+        out.println ("get:    " + found);
+        out.println ("equal:  " + ht.equals (hm) + " " + hm.equals (ht));
+        out.println ("depth:  " + ht.globalDepth + ", directory " + ht.dir.length);
+
+        ExtHash <Long, Integer> hc = new ExtHash <> (4);          // equal hashes must chain
+        for (int i = 0; i < 1000; i++) hc.put ((long) i << 32 | i, i);
+        found = true;
+        for (int i = 0; i < 1000; i++) found &= hc.get ((long) i << 32 | i) == i;
+        out.println ("chained: size " + hc.size () + ", get " + found + ", directory " + hc.dir.length);
+    } // main
+
+} // ExtHash class
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * @file  ExternalSort.java
+ *
+ * @author   agent
+ */
+
+import java.io.*;
+import static java.lang.System.out;
+import java.util.*;
+
+/*******************************************************************************
+ * The ExternalSort class sorts a stream of tuples that may not fit in memory.
+ * Tuples are collected into runs of a fixed size, each run is sorted in memory
+ * and spilled to a temporary file, and the runs are then merged in a single
+ * k-way pass.  Inputs no larger than one run never touch the disk.
+ */
+class ExternalSort
+{
+    /***************************************************************************
+     * Sort the tuples produced by the given iterator.
+     * @param in       the unsorted input tuples
+     * @param cmp      the order to sort in
+     * @param runSize  the maximum number of tuples held in memory at once
+     * @return  an iterator over the tuples in sorted order
+     */
+    public static Iterator <Comparable []> sort (Iterator <Comparable []> in,
+                                                 Comparator <Comparable []> cmp, int runSize)
+    {
+        List <Comparable []> run  = new ArrayList <> ();
+        List <File>          runs = new ArrayList <> ();
+
+        while (in.hasNext ()) {
+            run.add (in.next ());
+            if (run.size () == runSize && in.hasNext ()) {
+                runs.add (spill (run, cmp));
+                run.clear ();
+            } // if
+        } // while
+
+        run.sort (cmp);
+        if (runs.isEmpty ()) return run.iterator ();
+
+        runs.add (spill (run, cmp));
+        return new Merger (runs, cmp);
+    } // sort
+
+    /***************************************************************************
+     * Sort the run in memory and write it to a temporary file.
+     * @param run  the tuples making up the run
+     * @param cmp  the order to sort in
+     * @return  the file holding the sorted run
+     */
+    private static File spill (List <Comparable []> run, Comparator <Comparable []> cmp)
+    {
+        run.sort (cmp);
+        try {
+            File file = File.createTempFile ("run", ".tmp");
+            file.deleteOnExit ();
+            try (ObjectOutputStream oos = new ObjectOutputStream (
+                     new BufferedOutputStream (new FileOutputStream (file)))) {
+                oos.writeInt (run.size ());
+                for (Comparable [] tup : run) {
+                    oos.writeUnshared (tup);
+                    oos.reset ();                          // keep the handle table small
+                } // for
+            } // try
+            return file;
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("ExternalSort.spill", ex);
+        } // try
+    } // spill
+
+    /***************************************************************************
+     * The Merger class merges sorted runs by repeatedly taking the smallest head
+     * tuple from a priority queue holding one reader per run.
+     */
+    private static class Merger
+            implements Iterator <Comparable []>
+    {
+        /** The readers ordered by their current head tuple
+         */
+        private final PriorityQueue <Reader> heads;
+
+        Merger (List <File> runs, Comparator <Comparable []> cmp)
+        {
+            heads = new PriorityQueue <> (runs.size (), (a, b) -> cmp.compare (a.head, b.head));
+            for (File f : runs) {
+                Reader r = new Reader (f);
+                if (r.advance ()) heads.add (r);
+            } // for
+        } // Merger
+
+        public boolean hasNext ()
+        {
+            return ! heads.isEmpty ();
+        } // hasNext
+
+        public Comparable [] next ()
+        {
+            if (heads.isEmpty ()) throw new NoSuchElementException ();
+            Reader r = heads.poll ();
+            Comparable [] tup = r.head;
+            if (r.advance ()) heads.add (r);
+            return tup;
+        } // next
+
+    } // Merger class
+
+    /***************************************************************************
+     * The Reader class streams the tuples of one sorted run back from its file,
+     * deleting the file once the run is exhausted.
+     */
+    private static class Reader
+    {
+        private final File        file;
+        private ObjectInputStream ois;
+        private int               left;
+        Comparable []             head;
+
+        Reader (File _file)
+        {
+            file = _file;
+            try {
+                ois  = new ObjectInputStream (new BufferedInputStream (new FileInputStream (file)));
+                left = ois.readInt ();
+            } catch (IOException ex) {
+                throw new UncheckedIOException ("ExternalSort.Reader", ex);
+            } // try
+        } // Reader
+
+        boolean advance ()
+        {
+            try {
+                if (left-- > 0) {
+                    head = (Comparable []) ois.readUnshared ();
+                    return true;
+                } // if
+                ois.close ();
+                if (! file.delete ()) out.println ("ExternalSort: could not delete " + file);
+                head = null;
+                return false;
+            } catch (IOException | ClassNotFoundException ex) {
+                throw new RuntimeException ("ExternalSort.advance", ex);
+            } // try
+        } // advance
+
+    } // Reader class
+
+} // ExternalSort class
+
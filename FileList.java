@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * @file  FileList.java
+ *
+ * @author   agent
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import static java.lang.System.out;
+import java.util.*;
+
+/*******************************************************************************
+ * The FileList class keeps the tuples of a table in a file as fixed-length
+ * records, packed and unpacked by the table (see Table.pack/unpack), so the
+ * tuples need not fit in the heap.  The file is divided into pages of whole
+ * records that are read and written through the shared BufferPool, so repeated
+ * scans and lookups of a table that fits in the pool do no I/O.  Records are
+ * appended by add, read by record number by get, and read page by page by the
+ * iterator; the table's primary index holds record numbers (see Table.RowIndex).
+ * The file is a scratch file that is removed when the table is closed (see
+ * Table.close) or else when the JVM exits.
+ */
+public class FileList
+       extends AbstractList <Comparable []>
+       implements List <Comparable []>, RandomAccess, Serializable
+{
+    /** The directory holding the files (set with -Ddbp.dir, defaults to tmp).
+     */
+    private static final File DIR = new File (System.getProperty ("dbp.dir",
+                                                                  System.getProperty ("java.io.tmpdir")));
+
+    /** The buffer pool caching the pages of the file.
+     */
+    private static final BufferPool POOL = BufferPool.getPool ();
+
+    /** The table whose tuples are stored (used to pack and unpack them).
+     */
+    private final Table table;
+
+    /** The size of a record in bytes.
+     */
+    private final int recordSize;
+
+    /** The file holding the records.
+     */
+    private final File path;
+
+    /** The channel used to read and write the file.
+     */
+    private final FileChannel channel;
+
+    /** The number of records per page.
+     */
+    private final int perPage;
+
+    /** The identifier of the file in the buffer pool.
+     */
+    private final int fileId;
+
+    /** The number of records in the file.
+     */
+    private int nRecords = 0;
+
+    /***************************************************************************
+     * Construct an empty FileList.
+     * @param _table       the table whose tuples are stored
+     * @param _recordSize  the size of a packed tuple in bytes
+     */
+    @SuppressWarnings("resource")
+    public FileList (Table _table, int _recordSize)
+    {
+        table      = _table;
+        recordSize = _recordSize;
+        perPage    = POOL.pageSize () / recordSize;
+        if (perPage == 0) throw new IllegalArgumentException ("FileList: a " + recordSize
+                                  + " byte record does not fit in a " + POOL.pageSize () + " byte page");
+        try {
+            path = File.createTempFile ("tbl_" + table.getName () + "_", ".tbl", DIR);
+            path.deleteOnExit ();
+            channel = new RandomAccessFile (path, "rw").getChannel ();
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("FileList: cannot create file in " + DIR, ex);
+        } // try
+        fileId = POOL.register (channel);
+    } // FileList
+
+    /***************************************************************************
+     * Add a new tuple into the file list by packing it into the next record
+     * slot of the last page.
+     * @param tup  the tuple to add
+     * @return  whether the addition succeeded
+     */
+    public synchronized boolean add (Comparable [] tup)
+    {
+        BufferPool.Frame f = POOL.pin (fileId, nRecords / perPage);
+        try {
+            f.data.position (nRecords % perPage * recordSize);
+            table.pack (tup, f.data);
+        } finally {
+            POOL.unpin (f, true);
+        } // try
+        nRecords++;
+        modCount++;
+        return true;
+    } // add
+
+    /***************************************************************************
+     * Get the ith tuple by unpacking its record from its page.
+     * @param i  the index of the tuple to get
+     * @return  the ith tuple
+     */
+    public synchronized Comparable [] get (int i)
+    {
+        if (i < 0 || i >= nRecords) throw new IndexOutOfBoundsException ("FileList.get: " + i);
+        BufferPool.Frame f = POOL.pin (fileId, i / perPage);
+        try {
+            f.data.position (i % perPage * recordSize);
+            return table.unpack (f.data);
+        } finally {
+            POOL.unpin (f, false);
+        } // try
+    } // get
+
+    /***************************************************************************
+     * Return the size of the file list in terms of the number of tuples/records.
+     * @return  the number of tuples
+     */
+    public int size ()
+    {
+        return nRecords;
+    } // size
+
+    /***************************************************************************
+     * Return an iterator that reads the file sequentially, a page at a time.
+     * Each page is copied out of the pool while pinned, so an iterator that is
+     * abandoned part way through never leaves a page pinned.
+     * @return  an iterator over the tuples in the order they were added
+     */
+    public Iterator <Comparable []> iterator ()
+    {
+        return new Iterator <Comparable []> () {
+            int        next = 0;
+            int        end  = nRecords;
+            ByteBuffer page = ByteBuffer.allocate (POOL.pageSize ());
+
+            public boolean hasNext ()
+            {
+                return next < end;
+            } // hasNext
+
+            public Comparable [] next ()
+            {
+                if (next >= end) throw new NoSuchElementException ();
+                if (next % perPage == 0) {
+                    BufferPool.Frame f = POOL.pin (fileId, next / perPage);
+                    try {
+                        page.clear ();
+                        page.put (f.data.duplicate ().clear ());
+                    } finally {
+                        POOL.unpin (f, false);
+                    } // try
+                } // if
+                page.position (next++ % perPage * recordSize);
+                return table.unpack (page);
+            } // next
+        };
+    } // iterator
+
+    /***************************************************************************
+     * Close the file list, discarding its cached pages and deleting its file.
+     */
+    public void close ()
+    {
+        POOL.drop (fileId);
+        try {
+            channel.close ();
+        } catch (IOException ex) {
+            out.println ("FileList.close: " + ex);
+        } // try
+        if (! path.delete ()) out.println ("FileList.close: could not delete " + path);
+    } // close
+
+    /***************************************************************************
+     * Serialize the tuples as an in-memory list, since the file and its channel
+     * do not survive serialization.
+     * @return  an ArrayList holding the tuples
+     */
+    private Object writeReplace ()
+    {
+        return new ArrayList <> (this);
+    } // writeReplace
+
+} // FileList class
@@ -0,0 +1,17 @@
+/*******************************************************************************
+ * @file  IndexKind.java
+ *
+ * @author   agent
+ */
+
+/*******************************************************************************
+ * The IndexKind enumeration lists the kinds of secondary index a table can build
+ * (see Table.createIndex).  A HASH index answers equality lookups; an ORDERED
+ * index also answers range lookups on its leading attribute.
+ */
+public enum IndexKind
+{
+    HASH, ORDERED
+
+} // IndexKind enum
+
@@ -33,17 +33,20 @@ public class KeyType
     /***************************************************************************
      * Compare two keys (negative => less than, zero => equals,
      *                   positive => greater than).
+     * A key that is a proper prefix of the other sorts first, so a key built from
+     * the leading attributes alone is a lower bound for every key it prefixes.
      * @param k  the other key (to compare with this)
      * @return  resultant integer that's negative, zero or positive
      */
     @SuppressWarnings("unchecked")
     public int compareTo (KeyType k)
     {
-        for (int i = 0; i < key.length; i++) {
+        int n = Math.min (key.length, k.key.length);
+        for (int i = 0; i < n; i++) {
             if (key [i].compareTo (k.key [i]) < 0) return -1;
             if (key [i].compareTo (k.key [i]) > 0) return 1;
         } // for
-        return 0;
+        return Integer.compare (key.length, k.key.length);
     } // compareTo
 
     /***************************************************************************
@@ -56,6 +59,18 @@ public class KeyType
         return compareTo (k) == 0;
     } // equals
 
+    /***************************************************************************
+     * Determine whether this key equals the given object.  Hash-based collections
+     * call this overload, so it must agree with equals (KeyType) and hashCode.
+     * @param obj  the other object (to compare with this)
+     * @return  true if obj is an equal key, false otherwise
+     */
+    @Override
+    public boolean equals (Object obj)
+    {
+        return obj instanceof KeyType && compareTo ((KeyType) obj) == 0;
+    } // equals
+
     /***************************************************************************
      * Compute a hash code for this object (equal objects should produce the same
      * hash code).
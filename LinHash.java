@@ -0,0 +1,360 @@
+/*******************************************************************************
+ * @file  LinHash.java
+ *
+ * @author   agent
+ */
+
+import java.io.*;
+import static java.lang.System.out;
+import java.util.*;
+
+/*******************************************************************************
+ * The LinHash class provides hash maps that use the Linear Hashing algorithm.
+ * A hash table is created that is an array of buckets, each holding a fixed
+ * number of slots and chaining to overflow buckets when full.  When the load
+ * factor is exceeded, the single bucket at the split pointer is split, so the
+ * table grows one bucket at a time and an insert never rehashes the whole map.
+ * Buckets live in fixed-size segments, so growth never copies the buckets
+ * already allocated either.
+ */
+public class LinHash <K, V>
+       extends AbstractMap <K, V>
+       implements Serializable
+{
+    /** The number of slots (for key-value pairs) per bucket.
+     */
+    private static final int SLOTS = 4;
+
+    /** The number of buckets per segment of the bucket directory.
+     */
+    private static final int SEG_SIZE = 1 << 10;
+
+    /** The load factor (entries per slot) above which a bucket is split.
+     */
+    private static final double LOAD_FACTOR = 0.75;
+
+    /***************************************************************************
+     * The Bucket class holds up to SLOTS key-value pairs and links to an
+     * overflow bucket when those are used up.
+     */
+    private static final class Bucket
+    {
+        int            nKeys;
+        final Object [] key   = new Object [SLOTS];
+        final Object [] value = new Object [SLOTS];
+        Bucket         next;
+    } // Bucket class
+
+    /** The segments of the bucket directory (bucket i is in segment i / SEG_SIZE).
+     */
+    private transient Bucket [][] segment;
+
+    /** The number of buckets in use.
+     */
+    private transient int nBuckets;
+
+    /** The number of buckets at the start of the current round (a power of 2).
+     */
+    private transient int mod1;
+
+    /** The next bucket to split.
+     */
+    private transient int isplit;
+
+    /** The number of entries in the map.
+     */
+    private transient int size;
+
+    /** The initial number of buckets (a power of 2).
+     */
+    private final int initSize;
+
+    /***************************************************************************
+     * Construct a hash map starting with a default number of buckets.
+     */
+    public LinHash ()
+    {
+        this (16);
+    } // LinHash
+
+    /***************************************************************************
+     * Construct a hash map starting with at least the given number of buckets.
+     * @param _initSize  the initial number of buckets (rounded up to a power of 2)
+     */
+    public LinHash (int _initSize)
+    {
+        initSize = Integer.highestOneBit (Math.max (1, _initSize - 1)) << 1;
+        clear ();
+    } // LinHash
+
+    /***************************************************************************
+     * Remove all entries from the map.
+     */
+    public void clear ()
+    {
+        segment  = new Bucket [1][];
+        nBuckets = 0;
+        for (int i = 0; i < initSize; i++) addBucket ();
+        mod1     = initSize;
+        isplit   = 0;
+        size     = 0;
+    } // clear
+
+    /***************************************************************************
+     * Return the number of entries in the map.
+     * @return  the size of the map
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /***************************************************************************
+     * Return the value associated with the key.
+     * @param key  the key used for look up
+     * @return  the value associated with the key, or null if absent
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        int h = hash (key);
+        for (Bucket b = bucket (home (h)); b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                if (key.equals (b.key [j])) return (V) b.value [j];
+            } // for
+        } // for
+        return null;
+    } // get
+
+    /***************************************************************************
+     * Determine whether the map contains the key.
+     * @param key  the key to look for
+     * @return  whether an entry with that key exists
+     */
+    public boolean containsKey (Object key)
+    {
+        int h = hash (key);
+        for (Bucket b = bucket (home (h)); b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                if (key.equals (b.key [j])) return true;
+            } // for
+        } // for
+        return false;
+    } // containsKey
+
+    /***************************************************************************
+     * Put the key-value pair in the hash map, splitting one bucket if the load
+     * factor is exceeded.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the value previously associated with the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put (K key, V value)
+    {
+        if (key == null) throw new NullPointerException ("LinHash.put: null key");
+
+        int    h    = hash (key);
+        Bucket b    = bucket (home (h));
+        Bucket last = b;
+        for (; b != null; last = b, b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                if (key.equals (b.key [j])) {
+                    V old = (V) b.value [j];
+                    b.value [j] = value;
+                    return old;
+                } // if
+            } // for
+        } // for
+
+        append (last, key, value);
+        size++;
+        if (size > LOAD_FACTOR * SLOTS * nBuckets) split ();
+        return null;
+    } // put
+
+    /***************************************************************************
+     * Return the set of entries, read bucket by bucket.
+     * @return  the entry set view of the map
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <K, V>> () {
+            public int size () { return size; }
+
+            @SuppressWarnings("unchecked")
+            public Iterator <Map.Entry <K, V>> iterator ()
+            {
+                return new Iterator <Map.Entry <K, V>> () {
+                    int    i = 0;
+                    Bucket b = bucket (0);
+                    int    j = 0;
+
+                    public boolean hasNext ()
+                    {
+                        while (b != null && j >= b.nKeys) {
+                            b = b.next;
+                            j = 0;
+                            if (b == null && ++i < nBuckets) b = bucket (i);
+                        } // while
+                        return b != null;
+                    } // hasNext
+
+                    public Map.Entry <K, V> next ()
+                    {
+                        if (! hasNext ()) throw new NoSuchElementException ();
+                        Map.Entry <K, V> e = new SimpleImmutableEntry <> ((K) b.key [j], (V) b.value [j]);
+                        j++;
+                        return e;
+                    } // next
+                };
+            } // iterator
+        };
+    } // entrySet
+
+    /***************************************************************************
+     * Split the bucket at the split pointer: its entries are rehashed with the
+     * next round's modulus into either itself or a new bucket at the end.
+     */
+    private void split ()
+    {
+        Bucket old  = bucket (isplit);
+        int    mod2 = mod1 << 1;
+        addBucket ();
+        Bucket lo = new Bucket (), hi = bucket (nBuckets - 1);
+        setBucket (isplit, lo);
+
+        for (Bucket b = old; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) {
+                int h = hash (b.key [j]) & (mod2 - 1);
+                append (h == isplit ? lo : hi, b.key [j], b.value [j]);
+            } // for
+        } // for
+
+        if (++isplit == mod1) {                             // start the next round
+            isplit = 0;
+            mod1   = mod2;
+        } // if
+    } // split
+
+    /***************************************************************************
+     * Append the key-value pair to the last bucket of the chain starting at b.
+     * @param b      a bucket in the chain
+     * @param key    the key to append
+     * @param value  the value to append
+     */
+    private static void append (Bucket b, Object key, Object value)
+    {
+        while (b.next != null) b = b.next;
+        if (b.nKeys == SLOTS) b = b.next = new Bucket ();
+        b.key [b.nKeys]     = key;
+        b.value [b.nKeys++] = value;
+    } // append
+
+    /***************************************************************************
+     * Return the bucket a hash value belongs to in the current round: buckets
+     * below the split pointer have already been split and use the next round's
+     * modulus.
+     * @param h  the hash value
+     * @return  the bucket number
+     */
+    private int home (int h)
+    {
+        int i = h & (mod1 - 1);
+        return i < isplit ? h & ((mod1 << 1) - 1) : i;
+    } // home
+
+    /***************************************************************************
+     * Return the hash value for the key, spreading the high bits into the low
+     * bits used to pick buckets.
+     * @param key  the key to hash
+     * @return  a non-negative hash value
+     */
+    private static int hash (Object key)
+    {
+        int h = key.hashCode ();
+        return (h ^ (h >>> 16)) & 0x7fffffff;
+    } // hash
+
+    /***************************************************************************
+     * Return bucket i.
+     * @param i  the bucket number
+     * @return  the first bucket of chain i
+     */
+    private Bucket bucket (int i)
+    {
+        return segment [i / SEG_SIZE][i % SEG_SIZE];
+    } // bucket
+
+    /***************************************************************************
+     * Replace bucket i.
+     * @param i  the bucket number
+     * @param b  the new first bucket of chain i
+     */
+    private void setBucket (int i, Bucket b)
+    {
+        segment [i / SEG_SIZE][i % SEG_SIZE] = b;
+    } // setBucket
+
+    /***************************************************************************
+     * Add an empty bucket at the end, allocating a new segment when the last one
+     * is full (only the small array of segment references is ever copied).
+     */
+    private void addBucket ()
+    {
+        int s = nBuckets / SEG_SIZE;
+        if (s == segment.length) segment = Arrays.copyOf (segment, s * 2);
+        if (segment [s] == null) segment [s] = new Bucket [SEG_SIZE];
+        segment [s][nBuckets % SEG_SIZE] = new Bucket ();
+        nBuckets++;
+    } // addBucket
+
+    /***************************************************************************
+     * Write the map as its size followed by its entries.
+     * @param oos  the stream to write to
+     */
+    private void writeObject (ObjectOutputStream oos) throws IOException
+    {
+        oos.defaultWriteObject ();
+        oos.writeInt (size);
+        for (Map.Entry <K, V> e : entrySet ()) {
+            oos.writeObject (e.getKey ());
+            oos.writeObject (e.getValue ());
+        } // for
+    } // writeObject
+
+    /***************************************************************************
+     * Read the map written by writeObject.
+     * @param ois  the stream to read from
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject (ObjectInputStream ois) throws IOException, ClassNotFoundException
+    {
+        ois.defaultReadObject ();
+        clear ();
+        int n = ois.readInt ();
+        for (int i = 0; i < n; i++) put ((K) ois.readObject (), (V) ois.readObject ());
+    } // readObject
+
+    /***************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        LinHash <Integer, Integer> ht = new LinHash <> (4);
+        HashMap <Integer, Integer> hm = new HashMap <> ();
+        Random rand = new Random (7);
+        for (int i = 0; i < 100000; i++) {
+            int k = rand.nextInt (50000);
+            if (! Objects.equals (ht.put (k, i), hm.put (k, i))) out.println ("put mismatch at " + k);
+        } // for
+        boolean found = true;
+        for (int k = 0; k < 50000; k++) found &= Objects.equals (ht.get (k), hm.get (k));
+        out.println ("size:    " + ht.size () + " (HashMap " + hm.size () + ")");
+        out.println ("get:     " + found);
+        out.println ("equal:   " + ht.equals (hm) + " " + hm.equals (ht));
+        out.println ("buckets: " + ht.nBuckets + ", split pointer " + ht.isplit + ", mod " + ht.mod1);
+    } // main
+
+} // LinHash class
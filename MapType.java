@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * @file  MapType.java
+ *
+ * @author   agent
+ */
+
+/*******************************************************************************
+ * The MapType enumeration lists the map implementations a table may use for its
+ * primary index (see the Table constructors).  SKIPLIST_MAP is an ordered map
+ * that many threads may update and read at once, and the only one allowed for
+ * tuples shared by threads (APPEND_LIST and VERSION_LIST storage).
+ */
+public enum MapType
+{
+    TREE_MAP, BPTREE_MAP, LINHASH_MAP, EXTHASH_MAP, SKIPLIST_MAP;
+
+    /***************************************************************************
+     * Return the map a table uses for the given storage when none is named:
+     * SKIPLIST_MAP for tuples shared by threads, which require it, and TREE_MAP
+     * otherwise.
+     * @param sType  where the tuples are stored
+     * @return  the default map
+     */
+    public static MapType forStorage (StorageType sType)
+    {
+        return sType == StorageType.APPEND_LIST || sType == StorageType.VERSION_LIST ? SKIPLIST_MAP : TREE_MAP;
+    } // forStorage
+
+} // MapType enum
+
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * @file  MovieBench.java
+ *
+ * @author   agent
+ */
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/*******************************************************************************
+ * The MovieBench class benchmarks the relational operators of Table on Movie
+ * Database tables generated by MovieGen.  For each table size, every benchmark
+ * runs its operation a number of warmup times and then a number of measured
+ * times, reporting throughput, mean and percentile latency, and the bytes
+ * allocated per operation.  Allocation is summed over all threads, since
+ * large selects, projects and joins run in parallel on the common fork-join
+ * pool (see Table.PARALLEL_THRESHOLD), so the benchmark thread alone would
+ * miss most of their allocation.  Operators print a line per call, so
+ * standard output is discarded while they run.
+ *
+ * Arguments are key=value pairs (defaults in brackets):
+ *   sizes=1000,10000,100000  table sizes (movies)
+ *   skew=0.0                 Zipf skew of foreign keys (studio, producer)
+ *   sel=0.01                 selectivity of the range selections
+ *   warmup=5 iters=20        operations run before and during measurement
+ *   map=                     primary index (see MapType; TREE_MAP, or
+ *                            SKIPLIST_MAP if the storage requires it)
+ *   storage=ARRAY_LIST       tuple storage (see StorageType)
+ *   bench=all                benchmarks to run, comma separated, from
+ *                            project, select_point, select_range, select_conj,
+ *                            union, minus, join, insert
+ * e.g., java MovieBench sizes=1000000 skew=0.8 bench=select_range,join
+ */
+class MovieBench
+{
+    /** The names of the benchmarks, in the order they run.
+     */
+    static final String [] BENCH = { "project", "select_point", "select_range", "select_conj",
+                                     "union", "minus", "join", "insert" };
+
+    /** The standard output stream (restored after each measurement).
+     */
+    private static final PrintStream STDOUT = System.out;
+
+    /** A stream discarding what operators print while being measured.
+     */
+    private static final PrintStream NULL = new PrintStream (OutputStream.nullOutputStream ());
+
+    /** The bean reporting the bytes allocated by each thread.
+     */
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean ();
+
+    /***************************************************************************
+     * The Result class holds the measurements of one benchmark at one size.
+     */
+    static final class Result
+    {
+        final String  name;
+        final int     size;
+        final long [] latency;                       // nanoseconds per operation, sorted
+        final long    nanos;                         // total measured time
+        final long    bytes;                         // bytes allocated by all threads while measured
+
+        Result (String _name, int _size, long [] _latency, long _nanos, long _bytes)
+        {
+            name    = _name;
+            size    = _size;
+            latency = _latency;
+            nanos   = _nanos;
+            bytes   = _bytes;
+            Arrays.sort (latency);
+        } // Result
+
+        double throughput () { return latency.length * 1e9 / nanos; }
+
+        double percentile (double p) { return latency [(int) Math.min (latency.length - 1, p * latency.length)] / 1e6; }
+
+        public String toString ()
+        {
+            return String.format ("%-13s %9d %12.1f %10.3f %10.3f %10.3f %14.0f", name, size, throughput (),
+                                  nanos / 1e6 / latency.length, percentile (0.5), percentile (0.99),
+                                  (double) bytes / latency.length);
+        } // toString
+
+    } // Result class
+
+    /***************************************************************************
+     * Return the bytes allocated so far by each live thread.
+     * @return  the map from thread id to bytes allocated
+     */
+    static Map <Long, Long> allocated ()
+    {
+        long []          ids   = THREADS.getAllThreadIds ();
+        long []          bytes = THREADS.getThreadAllocatedBytes (ids);
+        Map <Long, Long> alloc = new HashMap <> ();
+        for (int i = 0; i < ids.length; i++) if (bytes [i] >= 0) alloc.put (ids [i], bytes [i]);
+        return alloc;
+    } // allocated
+
+    /***************************************************************************
+     * Return the bytes allocated by all threads since an earlier call to
+     * allocated.  Threads started since count in full; a thread that ended in
+     * between is missed, which the long-lived fork-join workers rarely do.
+     * @param before  the bytes allocated by each thread then
+     * @return  the bytes allocated since
+     */
+    static long allocatedSince (Map <Long, Long> before)
+    {
+        long sum = 0;
+        for (Map.Entry <Long, Long> e : allocated ().entrySet ()) {
+            sum += e.getValue () - before.getOrDefault (e.getKey (), 0L);
+        } // for
+        return sum;
+    } // allocatedSince
+
+    /***************************************************************************
+     * Run an operation warmup times and then iters times, timing each measured
+     * run and counting the bytes allocated by all threads, with standard output
+     * discarded.
+     * @param name    the name of the benchmark
+     * @param size    the table size
+     * @param warmup  the number of unmeasured runs
+     * @param iters   the number of measured runs
+     * @param op      the operation
+     * @return  the measurements
+     */
+    static Result measure (String name, int size, int warmup, int iters, Runnable op)
+    {
+        long [] latency = new long [iters];
+        System.setOut (NULL);
+        try {
+            for (int i = 0; i < warmup; i++) op.run ();
+            Map <Long, Long> bytes0 = allocated ();
+            long             start  = System.nanoTime ();
+            for (int i = 0; i < iters; i++) {
+                long t = System.nanoTime ();
+                op.run ();
+                latency [i] = System.nanoTime () - t;
+            } // for
+            long nanos = System.nanoTime () - start;
+            return new Result (name, size, latency, nanos, allocatedSince (bytes0));
+        } finally {
+            System.setOut (STDOUT);
+        } // try
+    } // measure
+
+    /***************************************************************************
+     * Make an empty table with the movie schema.
+     * @param name     the table name
+     * @param mType    the primary index
+     * @param sType    the tuple storage
+     * @return  the empty table
+     */
+    static Table movieTable (String name, MapType mType, StorageType sType)
+    {
+        return new Table (name, "title year length genre studioName producerNo",
+                          "String Integer Integer String String Integer", "title year", mType, sType);
+    } // movieTable
+
+    /***************************************************************************
+     * Run the benchmarks at one table size.
+     * @param n      the number of movies
+     * @param conf   the configuration (see the class comment)
+     * @param bench  the benchmarks to run
+     * @return  the measurements
+     */
+    static List <Result> run (int n, Map <String, String> conf, Set <String> bench)
+    {
+        double      skew   = Double.parseDouble (conf.get ("skew"));
+        double      sel    = Double.parseDouble (conf.get ("sel"));
+        int         warmup = Integer.parseInt (conf.get ("warmup"));
+        int         iters  = Integer.parseInt (conf.get ("iters"));
+        StorageType sType  = StorageType.valueOf (conf.get ("storage"));
+        MapType     mType  = conf.get ("map").isEmpty () ? MapType.forStorage (sType)
+                                                         : MapType.valueOf (conf.get ("map"));
+        int         nStud  = Math.max (10, n / 1000);
+        int         nExec  = Math.max (10, n / 100);
+
+        System.setOut (NULL);
+        MovieGen             gen   = new MovieGen (42, skew);
+        List <Comparable []> rows  = gen.movies (0, n, nStud, nExec);
+        Table                movie = movieTable ("movie", mType, sType);
+        movie.bulkLoad (rows.iterator ());
+        Table cinema = movieTable ("cinema", mType, sType);                 // half shared with movie
+        cinema.bulkLoad (rows.subList (n / 2, n).iterator ());
+        cinema.bulkLoad (gen.movies (n, n / 2, nStud, nExec).iterator ());
+        Table studio = new Table ("studio", "name address presNo", "String String Integer", "name", mType, sType);
+        studio.bulkLoad (gen.studios (nStud, nExec).iterator ());
+        System.setOut (STDOUT);
+
+        Random rand  = new Random (7);
+        int    width = Math.max (1, (int) (sel * n));
+        int    years = Math.max (1, (int) Math.round (sel * 120 * MovieGen.GENRE.length));
+        int [] next  = { n * 2 };
+        List <Result> results = new ArrayList <> ();
+        for (String b : BENCH) {
+            if (! bench.contains (b)) continue;
+            Runnable op;
+            switch (b) {
+            case "project":
+                op = () -> movie.project ("genre studioName");
+                break;
+            case "select_point":
+                op = () -> {
+                    int i = rand.nextInt (n);
+                    movie.select ("title == " + MovieGen.title (i) + " & year == " + MovieGen.year (i));
+                };
+                break;
+            case "select_range":
+                op = () -> {
+                    int i = rand.nextInt (Math.max (1, n - width));
+                    movie.select ("title >= " + MovieGen.title (i) + " & title < " + MovieGen.title (i + width));
+                };
+                break;
+            case "select_conj":
+                op = () -> {
+                    int y = 1900 + rand.nextInt (Math.max (1, 121 - years));
+                    movie.select ("year >= " + y + " & year < " + (y + years) + " & genre == drama");
+                };
+                break;
+            case "union":
+                op = () -> movie.union (cinema);
+                break;
+            case "minus":
+                op = () -> movie.minus (cinema);
+                break;
+            case "join":
+                op = () -> movie.join ("studioName == name", studio);
+                break;
+            case "insert":
+                op = () -> {
+                    int i = next [0]++;
+                    movie.insert (new Comparable [] { MovieGen.title (i), MovieGen.year (i), 100, "drama",
+                                                      MovieGen.studioName (0), 0 });
+                };
+                break;
+            default:
+                continue;
+            } // switch
+            int reps = b.equals ("insert") || b.equals ("select_point") ? iters * 100 : iters;
+            Result r = measure (b, n, b.equals ("insert") ? warmup * 100 : warmup, reps, op);
+            STDOUT.println (r);
+            results.add (r);
+        } // for
+
+        System.setOut (NULL);                                 // delete the files of disk-resident tables
+        movie.close ();
+        cinema.close ();
+        studio.close ();
+        System.setOut (STDOUT);
+        return results;
+    } // run
+
+    /***************************************************************************
+     * Run the benchmarks at each configured size.
+     * @param args  the configuration as key=value pairs (see the class comment)
+     */
+    public static void main (String [] args)
+    {
+        Map <String, String> conf = new HashMap <> ();
+        conf.put ("sizes", "1000,10000,100000");
+        conf.put ("skew", "0.0");
+        conf.put ("sel", "0.01");
+        conf.put ("warmup", "5");
+        conf.put ("iters", "20");
+        conf.put ("map", "");
+        conf.put ("storage", "ARRAY_LIST");
+        conf.put ("bench", "all");
+        for (String a : args) {
+            int eq = a.indexOf ('=');
+            if (eq < 0 || ! conf.containsKey (a.substring (0, eq))) {
+                STDOUT.println ("MovieBench: error - unknown argument " + a);
+                return;
+            } // if
+            conf.put (a.substring (0, eq), a.substring (eq + 1));
+        } // for
+        if (conf.get ("map").isEmpty ())                     // report the map used
+            conf.put ("map", MapType.forStorage (StorageType.valueOf (conf.get ("storage"))).name ());
+
+        Set <String> bench = new HashSet <> (conf.get ("bench").equals ("all") ? Arrays.asList (BENCH)
+                                             : Arrays.asList (conf.get ("bench").split (",")));
+        STDOUT.println ("MovieBench " + conf);
+        STDOUT.println (String.format ("%-13s %9s %12s %10s %10s %10s %14s", "benchmark", "size", "ops/s",
+                                       "mean ms", "p50 ms", "p99 ms", "alloc B/op"));
+        for (String s : conf.get ("sizes").split (",")) run (Integer.parseInt (s.trim ()), conf, bench);
+    } // main
+
+} // MovieBench class
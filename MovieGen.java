@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * @file  MovieGen.java
+ *
+ * @author   agent
+ */
+
+import static java.lang.System.out;
+import java.util.*;
+
+/*******************************************************************************
+ * The MovieGen class generates Movie Database tables (see MovieDB) of any size
+ * for benchmarks (see MovieBench).  Titles are "Movie" followed by an 8-digit
+ * number, so title ranges select a known fraction of the movies.  Foreign keys
+ * (a movie's studio and producer, a cast member's movie and star) are drawn
+ * from a Zipf distribution with the given skew, so a few studios, producers,
+ * movies and stars account for most references (skew 0 draws uniformly).
+ * Generation is deterministic for a given seed.
+ */
+class MovieGen
+{
+    /** The genres a movie may have.
+     */
+    static final String [] GENRE = { "drama", "comedy", "action", "sciFi", "horror", "romance",
+                                     "thriller", "western" };
+
+    /** The random number generator.
+     */
+    private final Random rand;
+
+    /** The Zipf skew of foreign keys.
+     */
+    private final double skew;
+
+    /***************************************************************************
+     * Construct a generator.
+     * @param seed   the random number seed
+     * @param _skew  the Zipf skew of foreign keys (0 for uniform)
+     */
+    MovieGen (long seed, double _skew)
+    {
+        rand = new Random (seed);
+        skew = _skew;
+    } // MovieGen
+
+    /***************************************************************************
+     * Return the title of movie i.
+     * @param i  the movie number
+     * @return  its title
+     */
+    static String title (int i)
+    {
+        return String.format (Locale.ROOT, "Movie%08d", i);             // ASCII digits in any locale
+    } // title
+
+    /***************************************************************************
+     * Return the name of studio i.
+     * @param i  the studio number
+     * @return  its name
+     */
+    static String studioName (int i)
+    {
+        return "Studio" + i;
+    } // studioName
+
+    /***************************************************************************
+     * Return the name of star i.
+     * @param i  the star number
+     * @return  its name
+     */
+    static String starName (int i)
+    {
+        return "Star" + i;
+    } // starName
+
+    /***************************************************************************
+     * Return the year of movie i (years cycle through 1900 to 2019).
+     * @param i  the movie number
+     * @return  its year
+     */
+    static int year (int i)
+    {
+        return 1900 + i % 120;
+    } // year
+
+    /***************************************************************************
+     * Generate the tuples of movies first, first + 1, ..., first + n - 1.
+     * @param first     the number of the first movie
+     * @param n         the number of movies
+     * @param nStudios  the number of studios to refer to
+     * @param nExecs    the number of producers to refer to
+     * @return  the movie tuples
+     */
+    List <Comparable []> movies (int first, int n, int nStudios, int nExecs)
+    {
+        Zipf                 studios = new Zipf (nStudios, skew, rand);
+        Zipf                 execs   = new Zipf (nExecs, skew, rand);
+        Zipf                 genres  = new Zipf (GENRE.length, skew, rand);
+        List <Comparable []> rows    = new ArrayList <> (n);
+        for (int i = first; i < first + n; i++) {
+            rows.add (new Comparable [] { title (i), year (i), 60 + rand.nextInt (180), GENRE [genres.next ()],
+                                          studioName (studios.next ()), execs.next () });
+        } // for
+        return rows;
+    } // movies
+
+    /***************************************************************************
+     * Generate the tuples of n studios.
+     * @param n       the number of studios
+     * @param nExecs  the number of executives to choose presidents from
+     * @return  the studio tuples
+     */
+    List <Comparable []> studios (int n, int nExecs)
+    {
+        List <Comparable []> rows = new ArrayList <> (n);
+        for (int i = 0; i < n; i++) {
+            rows.add (new Comparable [] { studioName (i), "Address" + rand.nextInt (1000), rand.nextInt (nExecs) });
+        } // for
+        return rows;
+    } // studios
+
+    /***************************************************************************
+     * Generate the tuples of n movie executives.
+     * @param n  the number of executives
+     * @return  the movieExec tuples
+     */
+    List <Comparable []> execs (int n)
+    {
+        List <Comparable []> rows = new ArrayList <> (n);
+        for (int i = 0; i < n; i++) {
+            rows.add (new Comparable [] { i, "Exec" + i, "Address" + rand.nextInt (1000),
+                                          (float) (10000 + rand.nextInt (1000000)) });
+        } // for
+        return rows;
+    } // execs
+
+    /***************************************************************************
+     * Generate the tuples of n movie stars.
+     * @param n  the number of stars
+     * @return  the movieStar tuples
+     */
+    List <Comparable []> stars (int n)
+    {
+        List <Comparable []> rows = new ArrayList <> (n);
+        for (int i = 0; i < n; i++) {
+            rows.add (new Comparable [] { starName (i), "Address" + rand.nextInt (1000), rand.nextBoolean () ? 'F' : 'M',
+                                          (1 + rand.nextInt (12)) + "/" + (1 + rand.nextInt (28)) + "/"
+                                          + (1930 + rand.nextInt (80)) });
+        } // for
+        return rows;
+    } // stars
+
+    /***************************************************************************
+     * Generate n cast tuples linking movies to stars (duplicates are dropped, so
+     * fewer than n may be returned).
+     * @param n        the number of cast tuples
+     * @param nMovies  the number of movies
+     * @param nStars   the number of stars
+     * @return  the starsIn tuples
+     */
+    List <Comparable []> cast (int n, int nMovies, int nStars)
+    {
+        Zipf                 movies = new Zipf (nMovies, skew, rand);
+        Zipf                 stars  = new Zipf (nStars, skew, rand);
+        Set <KeyType>        seen   = new HashSet <> ();
+        List <Comparable []> rows   = new ArrayList <> (n);
+        for (int k = 0; k < n; k++) {
+            int           m   = movies.next ();
+            Comparable [] tup = { title (m), year (m), starName (stars.next ()) };
+            if (seen.add (new KeyType (tup))) rows.add (tup);
+        } // for
+        return rows;
+    } // cast
+
+    /***************************************************************************
+     * The Zipf class draws integers 0 to n-1 with probability proportional to
+     * 1 / (i + 1)^skew, by binary search of the cumulative distribution.
+     */
+    static final class Zipf
+    {
+        private final double [] cdf;
+        private final Random    rand;
+
+        Zipf (int n, double skew, Random _rand)
+        {
+            rand = _rand;
+            cdf  = new double [Math.max (1, n)];
+            double sum = 0.0;
+            for (int i = 0; i < cdf.length; i++) cdf [i] = sum += 1.0 / Math.pow (i + 1, skew);
+            for (int i = 0; i < cdf.length; i++) cdf [i] /= sum;
+        } // Zipf
+
+        int next ()
+        {
+            int i = Arrays.binarySearch (cdf, rand.nextDouble ());
+            return Math.min (i < 0 ? -i - 1 : i, cdf.length - 1);
+        } // next
+
+    } // Zipf class
+
+    /***************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        MovieGen gen = new MovieGen (1, 1.0);
+        int [] count = new int [10];
+        for (Comparable [] tup : gen.movies (0, 100000, 10, 100)) {
+            count [Integer.parseInt (((String) tup [4]).substring (6))]++;
+        } // for
+        out.println ("movies per studio (skew 1.0): " + Arrays.toString (count));
+        out.println ("cast tuples: " + gen.cast (10000, 1000, 500).size ());
+    } // main
+
+} // MovieGen class
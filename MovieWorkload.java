@@ -0,0 +1,400 @@
+/*******************************************************************************
+ * @file  MovieWorkload.java
+ *
+ * @author   agent
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*******************************************************************************
+ * The MovieWorkload class drives a mixed workload against the six Movie Database
+ * tables (see MovieDB).  The tables are generated by MovieGen at a scale factor
+ * (scale factor 1 has 100,000 movies, 20,000 of them showing in cinemas, 100
+ * studios, 1,000 executives, 10,000 stars and up to 300,000 cast tuples), with
+ * Zipf-skewed foreign keys and query parameters.  Client threads then run a
+ * weighted mix of inserts and relational algebra queries for a fixed time after
+ * a warmup, and the throughput and latency percentiles of each kind of
+ * operation are written as JSON.  Tables are not thread-safe, so each is
+ * guarded by a read-write lock: inserts lock it for writing and queries for
+ * reading, always in the order the tables were created.  Tables stored in an
+ * AppendList, or versioned in a VersionList with each query reading a
+ * snapshot (both requiring map=SKIPLIST_MAP), are thread-safe and run unlocked.
+ *
+ * Arguments are key=value pairs (defaults in brackets):
+ *   sf=1            scale factor
+ *   clients=4       client threads
+ *   warmup=5        seconds run before measuring
+ *   seconds=30      seconds measured
+ *   skew=0.8        Zipf skew of foreign keys and query parameters
+ *   sel=0.001       selectivity of the range selections
+ *   map=            primary index (see MapType; TREE_MAP, or SKIPLIST_MAP if
+ *                   the storage requires it)
+ *   storage=ARRAY_LIST  tuple storage (see StorageType)
+ *   mix=insert:20,point:30,range:15,star:10,cast:10,studio:5,project:2,union:4,minus:4
+ *                   operation weights (see OPS)
+ *   out=            file for the JSON report (standard output if empty)
+ */
+class MovieWorkload
+{
+    /** The kinds of operation:
+     *  insert  - insert a movie and its cast
+     *  point   - select a movie by key
+     *  range   - select a range of movie titles
+     *  star    - select a star by name
+     *  cast    - select a movie's cast and join it with the stars
+     *  studio  - join a range of movies with their studios
+     *  project - project the executives onto name and fee
+     *  union   - union the movies and cinema films of a year
+     *  minus   - the movies of a year not showing in cinemas
+     */
+    static final String [] OPS = { "insert", "point", "range", "star", "cast", "studio", "project",
+                                   "union", "minus" };
+
+    /** The standard output stream (operators' output is discarded while running).
+     */
+    private static final PrintStream STDOUT = System.out;
+
+    /** The tables, in lock order, and their locks.
+     */
+    private final Table movie, cinema, movieStar, starsIn, movieExec, studio;
+    private final Map <Table, ReentrantReadWriteLock> lock = new IdentityHashMap <> ();
+    private final List <Table> order = new ArrayList <> ();
+
+    /** Whether the tables are thread-safe, so operations need not lock them.
+     */
+    private final boolean shared;
+
+    /** The configuration.
+     */
+    private final Map <String, String> conf;
+
+    /** The numbers of movies, stars and studios generated.
+     */
+    private final int nMovies, nStars, nStudios, nExecs;
+
+    /** The number of the next movie to insert.
+     */
+    private final AtomicInteger nextMovie;
+
+    /** The number of operations that threw an exception.
+     */
+    private final AtomicInteger errors = new AtomicInteger ();
+
+    /***************************************************************************
+     * Generate the tables at the configured scale factor.
+     * @param _conf  the configuration (see the class comment)
+     */
+    MovieWorkload (Map <String, String> _conf)
+    {
+        conf = _conf;
+        double      sf    = Double.parseDouble (conf.get ("sf"));
+        double      skew  = Double.parseDouble (conf.get ("skew"));
+        StorageType sType = StorageType.valueOf (conf.get ("storage"));
+        MapType     mType = conf.get ("map").isEmpty () ? MapType.forStorage (sType)
+                                                        : MapType.valueOf (conf.get ("map"));
+        conf.put ("map", mType.name ());                     // report the map used
+        shared    = sType == StorageType.APPEND_LIST || sType == StorageType.VERSION_LIST;
+        nMovies   = Math.max (10, (int) (100000 * sf));
+        nStars    = Math.max (10, (int) (10000 * sf));
+        nStudios  = Math.max (10, (int) (100 * sf));
+        nExecs    = Math.max (10, (int) (1000 * sf));
+        nextMovie = new AtomicInteger (nMovies);
+
+        MovieGen gen = new MovieGen (42, skew);
+        movie     = table (new Table ("movie", "title year length genre studioName producerNo",
+                                      "String Integer Integer String String Integer", "title year", mType, sType));
+        cinema    = table (new Table ("cinema", "title year length genre studioName producerNo",
+                                      "String Integer Integer String String Integer", "title year", mType, sType));
+        movieStar = table (new Table ("movieStar", "name address gender birthdate",
+                                      "String String Character String", "name", mType, sType));
+        starsIn   = table (new Table ("starsIn", "movieTitle movieYear starName",
+                                      "String Integer String", "movieTitle movieYear starName", mType, sType));
+        movieExec = table (new Table ("movieExec", "certNo name address fee",
+                                      "Integer String String Float", "certNo", mType, sType));
+        studio    = table (new Table ("studio", "name address presNo",
+                                      "String String Integer", "name", mType, sType));
+
+        List <Comparable []> films = gen.movies (0, nMovies, nStudios, nExecs);
+        movie.bulkLoad (films.iterator ());
+        List <Comparable []> shown = new ArrayList <> ();
+        for (int i = 0; i < nMovies; i += 5) shown.add (films.get (i));
+        cinema.bulkLoad (shown.iterator ());
+        movieStar.bulkLoad (gen.stars (nStars).iterator ());
+        starsIn.bulkLoad (gen.cast (3 * nMovies, nMovies, nStars).iterator ());
+        movieExec.bulkLoad (gen.execs (nExecs).iterator ());
+        studio.bulkLoad (gen.studios (nStudios, nExecs).iterator ());
+    } // MovieWorkload
+
+    /***************************************************************************
+     * Register a table and give it a lock.
+     * @param t  the table
+     * @return  the table
+     */
+    private Table table (Table t)
+    {
+        lock.put (t, new ReentrantReadWriteLock ());
+        order.add (t);
+        return t;
+    } // table
+
+    /***************************************************************************
+     * The Client class runs operations drawn from the mix until told to stop,
+     * recording the latency of those run after the warmup.
+     */
+    private final class Client extends Thread
+    {
+        final Random           rand;
+        final MovieGen.Zipf    movies, stars;
+        final int []           weight;
+        final long [][]        latency = new long [OPS.length][];
+        final int []           count   = new int [OPS.length];
+        volatile boolean       measuring = false, running = true;
+
+        Client (int id, int [] _weight)
+        {
+            double skew = Double.parseDouble (conf.get ("skew"));
+            rand   = new Random (id);
+            movies = new MovieGen.Zipf (nMovies, skew, rand);
+            stars  = new MovieGen.Zipf (nStars, skew, rand);
+            weight = _weight;
+            for (int k = 0; k < OPS.length; k++) latency [k] = new long [1024];
+        } // Client
+
+        public void run ()
+        {
+            int total = 0;
+            for (int w : weight) total += w;
+            while (running) {
+                int r = rand.nextInt (total), k = 0;
+                while (r >= weight [k]) r -= weight [k++];
+                long start = System.nanoTime ();
+                try {
+                    execute (OPS [k], this);
+                } catch (RuntimeException ex) {
+                    errors.incrementAndGet ();
+                } // try
+                long t = System.nanoTime () - start;
+                if (measuring) {
+                    if (count [k] == latency [k].length) latency [k] = Arrays.copyOf (latency [k], count [k] * 2);
+                    latency [k][count [k]++] = t;
+                } // if
+            } // while
+        } // run
+
+    } // Client class
+
+    /***************************************************************************
+     * Run one operation.
+     * @param op  the kind of operation (see OPS)
+     * @param c   the client running it (for its random numbers)
+     */
+    private void execute (String op, Client c)
+    {
+        int    m     = c.movies.next ();
+        String title = MovieGen.title (m);
+        int    year  = MovieGen.year (m);
+        int    width = Math.max (1, (int) (Double.parseDouble (conf.get ("sel")) * nMovies));
+        switch (op) {
+        case "insert":
+            int i = nextMovie.getAndIncrement ();
+            Comparable [] film = { MovieGen.title (i), MovieGen.year (i), 60 + c.rand.nextInt (180),
+                                   MovieGen.GENRE [c.rand.nextInt (MovieGen.GENRE.length)],
+                                   MovieGen.studioName (c.rand.nextInt (nStudios)), c.rand.nextInt (nExecs) };
+            write (movie, () -> movie.insert (film));
+            for (int k = 0; k < 3; k++) {
+                Comparable [] role = { film [0], film [1], MovieGen.starName (c.stars.next ()) };
+                write (starsIn, () -> starsIn.insert (role));
+            } // for
+            break;
+        case "point":
+            read (() -> movie.select ("title == " + title + " & year == " + year), movie);
+            break;
+        case "range":
+            read (() -> movie.select ("title >= " + title + " & title < " + MovieGen.title (m + width)), movie);
+            break;
+        case "star":
+            read (() -> movieStar.select ("name == " + MovieGen.starName (c.stars.next ())), movieStar);
+            break;
+        case "cast":
+            read (() -> starsIn.select ("movieTitle == " + title + " & movieYear == " + year)
+                               .join ("starName == name", movieStar), movieStar, starsIn);
+            break;
+        case "studio":
+            read (() -> movie.select ("title >= " + title + " & title < " + MovieGen.title (m + width))
+                             .join ("studioName == name", studio), movie, studio);
+            break;
+        case "project":
+            read (() -> movieExec.project ("name fee"), movieExec);
+            break;
+        case "union":
+            read (() -> movie.select ("year == " + year).union (cinema.select ("year == " + year)), movie, cinema);
+            break;
+        case "minus":
+            read (() -> movie.select ("year == " + year).minus (cinema.select ("year == " + year)), movie, cinema);
+            break;
+        default:
+            throw new IllegalArgumentException ("MovieWorkload: unknown operation " + op);
+        } // switch
+    } // execute
+
+    /***************************************************************************
+     * Run a query holding the read locks of the tables it reads, taken in
+     * table order so that no two queries wait for each other.
+     * @param query   the query
+     * @param tables  the tables it reads
+     */
+    private void read (Runnable query, Table... tables)
+    {
+        if (shared) { query.run (); return; }
+        Table [] t = tables.clone ();
+        Arrays.sort (t, Comparator.comparingInt (order::indexOf));
+        for (Table x : t) lock.get (x).readLock ().lock ();
+        try {
+            query.run ();
+        } finally {
+            for (Table x : t) lock.get (x).readLock ().unlock ();
+        } // try
+    } // read
+
+    /***************************************************************************
+     * Run an update holding the write lock of the table it changes.
+     * @param update  the update
+     * @param t       the table it changes
+     */
+    private void write (Table t, Runnable update)
+    {
+        if (shared) { update.run (); return; }
+        lock.get (t).writeLock ().lock ();
+        try {
+            update.run ();
+        } finally {
+            lock.get (t).writeLock ().unlock ();
+        } // try
+    } // write
+
+    /***************************************************************************
+     * Run the clients through the warmup and the measurement, and report the
+     * results as JSON.
+     * @return  the JSON report
+     */
+    String run () throws InterruptedException
+    {
+        int [] weight = new int [OPS.length];
+        for (String w : conf.get ("mix").split (",")) {
+            String [] kv = w.split (":");
+            int       k  = Arrays.asList (OPS).indexOf (kv [0].trim ());
+            if (k < 0) throw new IllegalArgumentException ("MovieWorkload: unknown operation " + kv [0]);
+            weight [k] = Integer.parseInt (kv [1].trim ());
+        } // for
+
+        Client [] client = new Client [Integer.parseInt (conf.get ("clients"))];
+        for (int i = 0; i < client.length; i++) (client [i] = new Client (i, weight)).start ();
+        Thread.sleep ((long) (Double.parseDouble (conf.get ("warmup")) * 1000));
+        errors.set (0);
+        long start = System.nanoTime ();
+        for (Client c : client) c.measuring = true;
+        Thread.sleep ((long) (Double.parseDouble (conf.get ("seconds")) * 1000));
+        for (Client c : client) c.measuring = false;
+        double secs = (System.nanoTime () - start) / 1e9;
+        for (Client c : client) c.running = false;
+        for (Client c : client) c.join ();
+
+        StringBuilder json  = new StringBuilder ("{\n  \"config\": {");
+        String        sep   = "";
+        for (Map.Entry <String, String> e : new TreeMap <> (conf).entrySet ()) {
+            json.append (sep).append ("\"").append (e.getKey ()).append ("\": \"").append (e.getValue ()).append ("\"");
+            sep = ", ";
+        } // for
+        json.append ("},\n  \"tables\": {");
+        sep = "";
+        for (Table t : order) {
+            json.append (sep).append ("\"").append (t.getName ()).append ("\": ").append (t.size ());
+            sep = ", ";
+        } // for
+        long total = 0;
+        for (Client c : client) for (int n : c.count) total += n;
+        json.append (String.format (Locale.ROOT, "},\n  \"seconds\": %.3f,\n  \"operations\": %d,"
+                                    + "\n  \"throughput\": %.1f,"
+                                    + "\n  \"errors\": %d,\n  \"latency_ms\": {", secs, total, total / secs, errors.get ()));
+        sep = "\n";
+        for (int k = 0; k < OPS.length; k++) {
+            int n = 0;
+            for (Client c : client) n += c.count [k];
+            if (n == 0) continue;
+            long [] lat = new long [n];
+            int     j   = 0;
+            for (Client c : client) {
+                System.arraycopy (c.latency [k], 0, lat, j, c.count [k]);
+                j += c.count [k];
+            } // for
+            Arrays.sort (lat);
+            double mean = 0.0;
+            for (long t : lat) mean += t;
+            json.append (sep).append (String.format (Locale.ROOT,              // '.' decimals in any locale
+                                                     "    \"%s\": {\"count\": %d, \"throughput\": %.1f, \"mean\": %.3f, "
+                                                     + "\"p50\": %.3f, \"p95\": %.3f, \"p99\": %.3f, \"max\": %.3f}",
+                                                     OPS [k], n, n / secs, mean / n / 1e6, pct (lat, 0.50),
+                                                     pct (lat, 0.95), pct (lat, 0.99), lat [n - 1] / 1e6));
+            sep = ",\n";
+        } // for
+        for (Table t : order) t.close ();                    // delete the files of disk-resident tables
+        return json.append ("\n  }\n}").toString ();
+    } // run
+
+    /***************************************************************************
+     * Return a percentile of sorted latencies in milliseconds.
+     * @param lat  the sorted latencies in nanoseconds
+     * @param p    the percentile as a fraction
+     * @return  the percentile in milliseconds
+     */
+    private static double pct (long [] lat, double p)
+    {
+        return lat [(int) Math.min (lat.length - 1, p * lat.length)] / 1e6;
+    } // pct
+
+    /***************************************************************************
+     * Generate the tables, run the workload and write the JSON report.
+     * @param args  the configuration as key=value pairs (see the class comment)
+     */
+    public static void main (String [] args) throws Exception
+    {
+        Map <String, String> conf = new HashMap <> ();
+        conf.put ("sf", "1");
+        conf.put ("clients", "4");
+        conf.put ("warmup", "5");
+        conf.put ("seconds", "30");
+        conf.put ("skew", "0.8");
+        conf.put ("sel", "0.001");
+        conf.put ("map", "");
+        conf.put ("storage", "ARRAY_LIST");
+        conf.put ("mix", "insert:20,point:30,range:15,star:10,cast:10,studio:5,project:2,union:4,minus:4");
+        conf.put ("out", "");
+        for (String a : args) {
+            int eq = a.indexOf ('=');
+            if (eq < 0 || ! conf.containsKey (a.substring (0, eq))) {
+                STDOUT.println ("MovieWorkload: error - unknown argument " + a);
+                return;
+            } // if
+            conf.put (a.substring (0, eq), a.substring (eq + 1));
+        } // for
+
+        System.setOut (new PrintStream (OutputStream.nullOutputStream ()));
+        String json;
+        try {
+            json = new MovieWorkload (conf).run ();
+        } finally {
+            System.setOut (STDOUT);
+        } // try
+        if (conf.get ("out").isEmpty ()) {
+            STDOUT.println (json);
+        } else {
+            try (PrintWriter w = new PrintWriter (conf.get ("out"))) {
+                w.println (json);
+            } // try
+        } // if
+    } // main
+
+} // MovieWorkload class
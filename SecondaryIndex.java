@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * @file  SecondaryIndex.java
+ *
+ * @author   agent
+ */
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/*******************************************************************************
+ * The SecondaryIndex class maps the values of one or more (non-key) attributes
+ * to the tuples holding them.  Unlike the primary index, several tuples may
+ * share the same values, so each entry holds a list of tuples.  The index of a
+ * table shared by several threads (see AppendList) uses a concurrent map and
+ * AppendLists, so inserts and lookups may run at once.
+ */
+class SecondaryIndex
+      implements Serializable
+{
+    /** The indexed attribute names
+     */
+    final String [] attributes;
+
+    /** The column positions of the indexed attributes
+     */
+    final int [] cols;
+
+    /** The kind of index (hash or ordered)
+     */
+    final IndexKind kind;
+
+    /** Whether several threads may use the index at once
+     */
+    private final boolean concurrent;
+
+    /** The map from attribute values to the tuples holding them
+     */
+    private final Map <KeyType, List <Comparable []>> map;
+
+    /***************************************************************************
+     * Construct an empty secondary index.
+     * @param _attributes  the indexed attribute names
+     * @param _cols        the column positions of the indexed attributes
+     * @param _kind        the kind of index
+     * @param _concurrent  whether several threads may use the index at once
+     */
+    SecondaryIndex (String [] _attributes, int [] _cols, IndexKind _kind, boolean _concurrent)
+    {
+        attributes = _attributes;
+        cols       = _cols;
+        kind       = _kind;
+        concurrent = _concurrent;
+        if (concurrent) map = kind == IndexKind.ORDERED ? new ConcurrentSkipListMap <> () : new ConcurrentHashMap <> ();
+        else            map = kind == IndexKind.ORDERED ? new TreeMap <> () : new HashMap <> ();
+    } // SecondaryIndex
+
+    /***************************************************************************
+     * Add a tuple to the index.
+     * @param tup  the tuple to add
+     */
+    void add (Comparable [] tup)
+    {
+        Comparable [] val = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) val [j] = tup [cols [j]];
+        map.computeIfAbsent (new KeyType (val), k -> concurrent ? new AppendList (1) : new ArrayList <> (2)).add (tup);
+    } // add
+
+    /***************************************************************************
+     * Return the tuples whose indexed attributes equal the given values.
+     * @param val  the values of the indexed attributes, in index order
+     * @return  the matching tuples (possibly empty)
+     */
+    List <Comparable []> get (KeyType val)
+    {
+        List <Comparable []> tups = map.get (val);
+        return tups == null ? Collections.emptyList () : tups;
+    } // get
+
+    /***************************************************************************
+     * Return the tuples whose leading indexed attribute lies within the given
+     * range, in order.  Only valid for ORDERED indexes.
+     * @param r  the bounds on the leading indexed attribute
+     * @return  the tuples within the bounds (and possibly a few at the bounds
+     *          that an exclusive bound excludes)
+     */
+    Iterable <Comparable []> range (Condition.Range r)
+    {
+        SortedMap <KeyType, List <Comparable []>> sorted = (SortedMap <KeyType, List <Comparable []>>) map;
+        Collection <List <Comparable []>> from = r.lo == null ? sorted.values ()
+                                               : sorted.tailMap (new KeyType (new Comparable [] { r.lo })).values ();
+        int lead = cols [0];
+        return () -> new Iterator <Comparable []> () {
+            Iterator <List <Comparable []>> outer = from.iterator ();
+            Iterator <Comparable []>        inner = Collections.emptyIterator ();
+
+            public boolean hasNext ()
+            {
+                while (! inner.hasNext () && outer.hasNext ()) {
+                    List <Comparable []> tups = outer.next ();
+                    if (tups.isEmpty ()) continue;                  // first tuple not yet published
+                    if (r.above (tups.get (0) [lead])) outer = Collections.emptyIterator ();
+                    else inner = tups.iterator ();
+                } // while
+                return inner.hasNext ();
+            } // hasNext
+
+            public Comparable [] next ()
+            {
+                if (! hasNext ()) throw new NoSuchElementException ();
+                return inner.next ();
+            } // next
+        };
+    } // range
+
+} // SecondaryIndex class
+
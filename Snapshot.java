@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * @file  Snapshot.java
+ *
+ * @author   agent
+ */
+
+import java.lang.ref.WeakReference;
+import static java.lang.System.out;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*******************************************************************************
+ * The Snapshot class gives queries over versioned tables (see VersionList) a
+ * stable view: a snapshot reads the tuples committed at or before its
+ * timestamp and none committed later, however long it is open.  Commit
+ * timestamps come from one clock shared by all tables, so a snapshot is
+ * consistent across the tables a query reads.  A commit becomes visible once
+ * every earlier commit has, so a snapshot never misses an earlier one still
+ * in progress.  The open snapshots are tracked so a background thread can
+ * reclaim the versions none of them can see (see VersionList.vacuum).
+ * #usage try (Snapshot s = Snapshot.begin ()) { movie.asOf (s).join (...) }
+ */
+public class Snapshot
+       implements AutoCloseable
+{
+    /** How often the versions no snapshot can see are reclaimed, in milliseconds.
+     */
+    private static final long GC_MILLIS = 100;
+
+    /** The number of spins a commit makes waiting for earlier ones before yielding.
+     */
+    private static final int SPINS = 64;
+
+    /** The last commit timestamp handed out.
+     */
+    private static final AtomicLong clock = new AtomicLong ();
+
+    /** The last commit timestamp visible to new snapshots.
+     */
+    private static volatile long visible = 0;
+
+    /** The number of open snapshots at each timestamp (guarded by Snapshot.class).
+     */
+    private static final TreeMap <Long, Integer> open = new TreeMap <> ();
+
+    /** The versioned tuple lists, whose old versions the collector reclaims
+     *  until the lists themselves become garbage (guarded by Snapshot.class).
+     */
+    private static final List <WeakReference <VersionList>> lists = new ArrayList <> ();
+
+    /** The thread reclaiming old versions (started with the first versioned list).
+     */
+    private static Thread collector;
+
+    /** The timestamp this snapshot reads as of.
+     */
+    final long ts;
+
+    /** Whether the snapshot has been closed.
+     */
+    private boolean closed = false;
+
+    /***************************************************************************
+     * Construct a snapshot.
+     * @param _ts  the timestamp to read as of
+     */
+    private Snapshot (long _ts)
+    {
+        ts = _ts;
+    } // Snapshot
+
+    /***************************************************************************
+     * Open a snapshot of everything committed so far.  It must be closed when
+     * the queries using it are done, so the versions it sees may be reclaimed.
+     * @return  the snapshot
+     */
+    public static Snapshot begin ()
+    {
+        synchronized (Snapshot.class) {
+            long t = visible;
+            open.merge (t, 1, Integer::sum);
+            return new Snapshot (t);
+        } // synchronized
+    } // begin
+
+    /***************************************************************************
+     * Close the snapshot.
+     */
+    public void close ()
+    {
+        synchronized (Snapshot.class) {
+            if (closed) return;
+            closed = true;
+            open.computeIfPresent (ts, (t, n) -> n == 1 ? null : n - 1);
+        } // synchronized
+    } // close
+
+    /***************************************************************************
+     * Return the timestamp the snapshot reads as of.
+     * @return  the timestamp
+     */
+    public long timestamp ()
+    {
+        return ts;
+    } // timestamp
+
+    /***************************************************************************
+     * Return the last commit timestamp visible to new snapshots.
+     * @return  the timestamp
+     */
+    static long latest ()
+    {
+        return visible;
+    } // latest
+
+    /***************************************************************************
+     * Take the next commit timestamp.  The caller must pass it to commit.
+     * @return  the timestamp
+     */
+    static long reserve ()
+    {
+        return clock.incrementAndGet ();
+    } // reserve
+
+    /***************************************************************************
+     * Make a commit visible to new snapshots, once every earlier commit is.
+     * @param t  the commit timestamp from reserve
+     */
+    static void commit (long t)
+    {
+        for (int spin = 0; visible != t - 1; spin++) {
+            if (spin < SPINS) Thread.onSpinWait ();
+            else Thread.yield ();
+        } // for
+        visible = t;
+    } // commit
+
+    /***************************************************************************
+     * Return the oldest timestamp any snapshot, open or yet to be opened, may
+     * read as of: the versions replaced by one that began at or before it can
+     * never be seen again.
+     * @return  the horizon
+     */
+    static synchronized long horizon ()
+    {
+        return open.isEmpty () ? visible : Math.min (visible, open.firstKey ());
+    } // horizon
+
+    /***************************************************************************
+     * Have the collector reclaim the old versions of a list, starting the
+     * collector if it is not running.
+     * @param list  the versioned tuple list
+     */
+    static synchronized void register (VersionList list)
+    {
+        lists.add (new WeakReference <> (list));
+        if (collector == null) {
+            collector = new Thread (Snapshot::collect, "mvcc-gc");
+            collector.setDaemon (true);
+            collector.start ();
+        } // if
+    } // register
+
+    /***************************************************************************
+     * Reclaim, every GC_MILLIS, the versions of each registered list that were
+     * replaced at or before the horizon.
+     */
+    private static void collect ()
+    {
+        while (true) {
+            try {
+                Thread.sleep (GC_MILLIS);
+            } catch (InterruptedException ex) {
+                return;
+            } // try
+            long               horizon = horizon ();
+            List <VersionList> ls      = new ArrayList <> ();
+            synchronized (Snapshot.class) {
+                for (Iterator <WeakReference <VersionList>> it = lists.iterator (); it.hasNext (); ) {
+                    VersionList l = it.next ().get ();
+                    if (l == null) it.remove ();
+                    else ls.add (l);
+                } // for
+            } // synchronized
+            for (VersionList l : ls) {
+                try {
+                    l.vacuum (horizon);
+                } catch (RuntimeException ex) {
+                    out.println ("Snapshot: error - " + ex);
+                } // try
+            } // for
+        } // while
+    } // collect
+
+} // Snapshot class
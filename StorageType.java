@@ -0,0 +1,19 @@
+/*******************************************************************************
+ * @file  StorageType.java
+ *
+ * @author   agent
+ */
+
+/*******************************************************************************
+ * The StorageType enumeration lists where a table may keep its tuples (see the
+ * Table constructors): in an in-memory ArrayList, in a disk-backed FileList or
+ * column by column in primitive arrays in a ColumnList, in an AppendList
+ * that many threads may append to and read at once, or as versions in a
+ * VersionList so that queries read snapshots while inserts continue.
+ */
+public enum StorageType
+{
+    ARRAY_LIST, FILE_LIST, COLUMN_LIST, APPEND_LIST, VERSION_LIST
+
+} // StorageType enum
+
@@ -4,17 +4,39 @@
  * @author   John Miller
  */
 
-import java.io.Serializable;
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import static java.lang.Boolean.*;
 import static java.lang.System.out;
 import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 /*******************************************************************************
  * This class implements relational database tables (including attribute names,
  * domains and a list of tuples.  Five basic relational algebra operators are
  * provided: project, select, union, minus and join.  The insert data manipulation
  * operator is also provided.  Missing are update and delete data manipulation
- * operators.
+ * operators.  A table created with StorageType.APPEND_LIST (which requires
+ * MapType.SKIPLIST_MAP) may be inserted into and queried by several threads at
+ * once without a lock on the table; queries never wait, while an insert may
+ * wait for earlier ones to publish (see AppendList).  Each scan sees the tuples
+ * whose inserts had finished when it began (secondary indexes should be created
+ * before sharing it).
+ * With StorageType.VERSION_LIST (which also requires MapType.SKIPLIST_MAP),
+ * the table keeps versions of its tuples and each query reads them, through a
+ * primary index as of the same moment, as of the moment it began (see asOf and
+ * Snapshot).
  */
 public class Table
        implements Serializable, Cloneable
@@ -23,9 +45,36 @@ public class Table
      */
     private static final boolean DEBUG = true;
 
-    /** Counter for naming temporary tables.
+    /** Counter for naming temporary tables (atomic, as tables may be queried
+     *  from several threads at once).
      */
-    private static int count = 0;
+    private static final AtomicInteger count = new AtomicInteger ();
+
+    /** Largest build input for an in-memory hash join; bigger joins sort-merge.
+     */
+    private static final int HASH_JOIN_LIMIT = 1 << 22;
+
+    /** Number of tuples sorted in memory per run of an external sort.
+     */
+    private static final int SORT_RUN_SIZE = 1 << 20;
+
+    /** Smallest in-memory table that select and project scan in parallel (set
+     *  with -Ddbp.parallel), and the number of tuples in each parallel chunk.
+     */
+    static final int PARALLEL_THRESHOLD = Integer.getInteger ("dbp.parallel", 1 << 16);
+    private static final int PARALLEL_CHUNK = 1 << 13;
+
+    /** Target number of build tuples per partition of a radix join.
+     */
+    private static final int RADIX_PART_SIZE = 1 << 10;
+
+    /** Number of bytes a packed String occupies in a record.
+     */
+    static final int STRING_SIZE = 64;
+
+    /** Per-thread scratch space for decoding packed Strings.
+     */
+    private static final ThreadLocal <char []> CHARS = ThreadLocal.withInitial (() -> new char [STRING_SIZE / 2]);
 
     /** Table name.
      */
@@ -46,30 +95,110 @@ public class Table
      */
     private final List <Comparable []> tuples;
 
+    /** The magic number, version and block size of snapshot files (see save).
+     */
+    private static final int SNAP_MAGIC = 0x44425053, SNAP_VERSION = 2, SNAP_BLOCK = 1 << 20;
+
+    /** The number of tuples checked and appended at a time by bulkLoad.
+     */
+    private static final int BULK_CHUNK = 1 << 12;
+
     /** Primary key. 
      */
     private final String [] key;
 
-    /** Index into tuples (maps key to tuple).
+    /** Index into tuples (maps key to tuple; for tuples not kept as objects,
+     *  a RowIndex mapping key to position).
      */
     private final Map <KeyType, Comparable []> index;
 
+    /** Secondary indexes on non-key attributes (see createIndex).
+     */
+    private final List <SecondaryIndex> secondary;
+
+    /** The write-ahead log recording inserts (null if none is open, see openLog).
+     */
+    private transient WriteAheadLog wal;
+
+    /** Held shared by inserts while they log and apply a tuple, and exclusively
+     *  by save while it fixes the LSN its snapshot covers (created by openLog).
+     */
+    private transient ReentrantReadWriteLock logLock;
+
+    /** The LSN of the last logged insert the tuples include, when no log is open
+     *  (set by load from the snapshot, and by closeLog; see WriteAheadLog).
+     */
+    private long logged = 0;
+
+    /** Whether an insert has replaced an index entry, i.e., two tuples share a
+     *  key (only consulted for a concurrent index, see indexed).
+     */
+    private volatile boolean shadowed = false;
+
     /***************************************************************************
      * Construct an empty table from the meta-data specifications.
      * @param _name       the name of the relation
      * @param _attribute  the string containing attributes names
      * @param _domain     the string containing attribute domains (data types)
      * @param _key        the primary key
+     * @param _mType      the map implementation used for the primary index
+     * @param _sType      where the tuples are stored (in memory or on disk)
+     * @throws IllegalArgumentException  if the tuples are shared by threads (in
+     *                                   an AppendList or VersionList) but the
+     *                                   index is not a SKIPLIST_MAP
      */  
-    public Table (String _name, String [] _attribute, Class [] _domain, String [] _key)
+    public Table (String _name, String [] _attribute, Class [] _domain, String [] _key,
+                  MapType _mType, StorageType _sType)
     {
+        if (MapType.forStorage (_sType) == MapType.SKIPLIST_MAP && _mType != MapType.SKIPLIST_MAP) {
+            throw new IllegalArgumentException ("Table: " + _sType + " needs a SKIPLIST_MAP index, not " + _mType);
+        } // if
         name      = _name;
         attribute = _attribute;
         domain    = _domain;
         key       = _key;
-        tuples    = new ArrayList <> ();                // also try FileList, see below
-//      tuples    = new FileList (this, tupleSize ());
-        index     = new TreeMap <> ();                  // also try BPTreeMap, LinHash or ExtHash
+        switch (_sType) {
+        case FILE_LIST:    tuples = new FileList (this, tupleSize ()); break;
+        case COLUMN_LIST:  tuples = new ColumnList (domain);            break;
+        case APPEND_LIST:  tuples = new AppendList ();                  break;
+        case VERSION_LIST: tuples = new VersionList ();                 break;
+        default:           tuples = new ArrayList <> ();
+        } // switch
+        if (tuples instanceof VersionList) {                  // the newest version of each key
+            index = ((VersionList) tuples).index ();
+        } else if (tuples instanceof FileList || tuples instanceof ColumnList) {
+            index = RowIndex.of (makeMap (_mType), tuples);
+        } else {
+            index = makeMap (_mType);
+        } // if
+        secondary = new ArrayList <> ();
+    } // Table
+
+    /***************************************************************************
+     * Construct an empty table from the meta-data specifications, storing the
+     * tuples in memory.
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _mType      the map implementation used for the primary index
+     */  
+    public Table (String _name, String [] _attribute, Class [] _domain, String [] _key, MapType _mType)
+    {
+        this (_name, _attribute, _domain, _key, _mType, StorageType.ARRAY_LIST);
+    } // Table
+
+    /***************************************************************************
+     * Construct an empty table from the meta-data specifications, indexed by a
+     * TreeMap.
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     */  
+    public Table (String _name, String [] _attribute, Class [] _domain, String [] _key)
+    {
+        this (_name, _attribute, _domain, _key, MapType.TREE_MAP);
     } // Table
 
     /***************************************************************************
@@ -77,14 +206,75 @@ public class Table
      * @param name        the name of the relation
      * @param attributes  the string containing attributes names
      * @param domains     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param mType       the map implementation used for the primary index
+     * @param sType       where the tuples are stored (in memory or on disk)
      */
-    public Table (String name, String attributes, String domains, String _key)
+    public Table (String name, String attributes, String domains, String _key,
+                  MapType mType, StorageType sType)
     {
-        this (name, attributes.split (" "), findClass (domains.split (" ")), _key.split(" "));
+        this (name, attributes.split (" "), findClass (domains.split (" ")), _key.split(" "), mType, sType);
 
         out.println ("DDL> create table " + name + " (" + attributes + ")");
     } // Table
 
+    /***************************************************************************
+     * Construct an empty table from the raw string specifications.
+     * @param name        the name of the relation
+     * @param attributes  the string containing attributes names
+     * @param domains     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param mType       the map implementation used for the primary index
+     */
+    public Table (String name, String attributes, String domains, String _key, MapType mType)
+    {
+        this (name, attributes, domains, _key, mType, StorageType.ARRAY_LIST);
+    } // Table
+
+    /***************************************************************************
+     * Construct an empty table from the raw string specifications, indexed by a
+     * TreeMap (a ConcurrentSkipListMap for tuples shared by threads, see
+     * MapType.forStorage).
+     * @param name        the name of the relation
+     * @param attributes  the string containing attributes names
+     * @param domains     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param sType       where the tuples are stored (in memory or on disk)
+     */
+    public Table (String name, String attributes, String domains, String _key, StorageType sType)
+    {
+        this (name, attributes, domains, _key, MapType.forStorage (sType), sType);
+    } // Table
+
+    /***************************************************************************
+     * Construct an empty table from the raw string specifications.
+     * @param name        the name of the relation
+     * @param attributes  the string containing attributes names
+     * @param domains     the string containing attribute domains (data types)
+     */
+    public Table (String name, String attributes, String domains, String _key)
+    {
+        this (name, attributes, domains, _key, MapType.TREE_MAP);
+    } // Table
+
+    /***************************************************************************
+     * Construct a read-only view of a versioned table as of a snapshot (see
+     * asOf), with a primary index as of the same snapshot and no secondary
+     * indexes.
+     * @param tab   the versioned table
+     * @param view  the versions visible in the snapshot
+     */
+    private Table (Table tab, VersionList.View view)
+    {
+        name      = tab.name;
+        attribute = tab.attribute;
+        domain    = tab.domain;
+        key       = tab.key;
+        tuples    = view;
+        index     = view.index ();
+        secondary = new ArrayList <> ();
+    } // Table
+
     /***************************************************************************
      * Construct an empty table using the meta-data of an existing table.
      * @param tab     the table supplying the meta-data
@@ -105,6 +295,12 @@ public class Table
      */
     public Table project (String attributeList)
     {
+        if (versioned ()) {                                   // read as of the query's start
+            try (Snapshot s = Snapshot.begin ()) {
+                return asOf (s).project (attributeList);
+            } // try
+        } // if
+
         out.println ("RA> " + name + ".project (" + attributeList + ")");
 
         String [] pAttribute = attributeList.split (" ");
@@ -137,7 +333,19 @@ public class Table
             newKey = pAttribute; //all attributes if not                                                                                                                 
 
 
-        Table     result     = new Table (name + count++, pAttribute, colDomain, newKey);
+        if (tuples instanceof ColumnList) {                       // copy whole column vectors
+            Table result = new Table (name + count.getAndIncrement (), pAttribute, colDomain, newKey,
+                                      MapType.TREE_MAP, StorageType.COLUMN_LIST);
+            ((ColumnList) result.tuples).project ((ColumnList) tuples, colPos);
+            return result;
+        } // if
+
+        Table     result     = new Table (name + count.getAndIncrement (), pAttribute, colDomain, newKey);
+
+        if (parallel (tuples)) {
+            parallelScan (tuples, tup -> extractTup (tup, colPos), result.tuples);
+            return result;
+        } // if
 
         for (Comparable [] tup : tuples) {
             result.tuples.add (extractTup (tup, colPos));
@@ -151,6 +359,7 @@ public class Table
      * A condition is written as infix expression consists of 
      *   6 comparison operators: "==", "!=", "<", "<=", ">", ">="
      *   2 Boolean operators:    "&", "|"  (from high to low precedence)
+     * The condition is compiled once into a Condition before the tuples are scanned.
      * #usage movie.select ("1979 < year & year < 1990")
      * @param condition  the check condition for tuples
      * @return the table consisting of tuples satisfying the condition
@@ -158,21 +367,121 @@ public class Table
      */
     public Table select (String condition)
     {
+        if (versioned ()) {                                   // read as of the query's start
+            try (Snapshot s = Snapshot.begin ()) {
+                return asOf (s).select (condition);
+            } // try
+        } // if
+
         out.println ("RA> " + name + ".select (" + condition + ")");
 
-       String [] postfix = infix2postfix (condition);           // FIX: uncomment after impl
-	System.out.println(Arrays.toString(postfix));
-        Table     result  = new Table (name + count++, attribute, domain, key);
+        Condition pred   = Condition.compile (infix2postfix (condition), attribute, domain);
+        Table     result = new Table (name + count.getAndIncrement (), attribute, domain, key);
+        if (pred == null) return result;
 
-        for (Comparable [] tup : tuples) {
-            if (evalTup (postfix, tup)) result.tuples.add (tup);
+        Iterable <Comparable []> path = accessPath (pred);
+        if (path == tuples && tuples instanceof ColumnList) {     // scan the column vectors
+            result = new Table (result.name, attribute, domain, key, MapType.TREE_MAP, StorageType.COLUMN_LIST);
+            ((ColumnList) result.tuples).gather ((ColumnList) tuples, pred.select ((ColumnList) tuples));
+            return result;
+        } // if
+        if (path == tuples && parallel (tuples)) {
+            parallelScan (tuples, tup -> pred.eval (tup) ? tup : null, result.tuples);
+            return result;
+        } // if
+
+        for (Comparable [] tup : path) {
+            if (pred.eval (tup)) result.tuples.add (tup);
         } // for
 
         return result;
     } // select
 
+    /***************************************************************************
+     * Choose the tuples a selection must examine.  If the condition fixes every
+     * key attribute, the index is probed once; if it bounds the leading key
+     * attribute and the index is ordered, only the tuples between the bounds are
+     * visited.  Otherwise all tuples are scanned.  The caller still applies the
+     * full condition to each tuple returned.
+     * @param pred  the compiled selection condition
+     * @return  the candidate tuples
+     */
+    private Iterable <Comparable []> accessPath (Condition pred)
+    {
+        if (! indexed ()) return secondaryPath (pred);
+
+        int []        keyPos = match (key);
+        Comparable [] keyVal = new Comparable [keyPos.length];
+        for (int i = 0; i < keyPos.length; i++) {
+            Condition.Range r = pred.range (keyPos [i]);
+            if (r == null || ! r.isPoint ()) { keyVal = null; break; }
+            keyVal [i] = r.lo;
+        } // for
+        if (keyVal != null) {
+            Comparable [] tup = index.get (new KeyType (keyVal));
+            return tup == null ? Collections.emptyList () : Collections.singletonList (tup);
+        } // if
+
+        Condition.Range r = pred.range (keyPos [0]);
+        if (r == null || ! (index instanceof SortedMap)) return secondaryPath (pred);
+
+        SortedMap <KeyType, Comparable []> sorted = (SortedMap <KeyType, Comparable []>) index;
+        Collection <Comparable []> from = r.lo == null ? sorted.values ()
+                                        : sorted.tailMap (new KeyType (new Comparable [] { r.lo })).values ();
+        return () -> new Iterator <Comparable []> () {
+            Iterator <Comparable []> it   = from.iterator ();
+            Comparable []            next = advance ();
+
+            Comparable [] advance ()
+            {
+                Comparable [] tup = it.hasNext () ? it.next () : null;
+                return tup == null || r.above (tup [keyPos [0]]) ? null : tup;
+            } // advance
+
+            public boolean hasNext () { return next != null; }
+
+            public Comparable [] next ()
+            {
+                if (next == null) throw new NoSuchElementException ();
+                Comparable [] tup = next;
+                next = advance ();
+                return tup;
+            } // next
+        };
+    } // accessPath
+
+    /***************************************************************************
+     * Choose the tuples a selection must examine using the secondary indexes: an
+     * index whose attributes are all fixed by the condition is probed once, and
+     * an ordered index whose leading attribute is bounded is scanned between the
+     * bounds.  Otherwise all tuples are scanned.
+     * @param pred  the compiled selection condition
+     * @return  the candidate tuples
+     */
+    private Iterable <Comparable []> secondaryPath (Condition pred)
+    {
+        for (SecondaryIndex si : secondary) {
+            Comparable [] val = new Comparable [si.cols.length];
+            for (int i = 0; val != null && i < si.cols.length; i++) {
+                Condition.Range r = pred.range (si.cols [i]);
+                if (r == null || ! r.isPoint ()) val = null;
+                else val [i] = r.lo;
+            } // for
+            if (val != null) return si.get (new KeyType (val));
+        } // for
+
+        for (SecondaryIndex si : secondary) {
+            Condition.Range r = pred.range (si.cols [0]);
+            if (r != null && si.kind == IndexKind.ORDERED) return si.range (r);
+        } // for
+        return tuples;
+    } // secondaryPath
+
     /***************************************************************************
      * Union this table and table2.  Check that the two tables are compatible.
+     * Duplicates are found by hashing tuple contents (or, when both tables share
+     * the key, by probing the primary index and comparing the contents of the
+     * tuple found), so the cost is linear.
      * #usage movie.union (show)
      * @param table2  the rhs table in the union operation
      * @return  the table representing the union (this U table2)
@@ -180,33 +489,40 @@ public class Table
      */
     public Table union (Table table2)
     {
+        if (versioned () || table2.versioned ()) {            // read both as of the query's start
+            try (Snapshot s = Snapshot.begin ()) {
+                return asOf (s).union (table2.asOf (s));
+            } // try
+        } // if
+
         out.println ("RA> " + name + ".union (" + table2.name + ")");
 
-        Table result = new Table (name + count++, attribute, domain, key);
+        Table result = new Table (name + count.getAndIncrement (), attribute, domain, key);
         if (!this.compatible(table2)){
         	return result;
         }
-        int length1 = this.tuples.size();
-        for(int i=0; i< length1; i++){
-        	result.tuples.add(this.tuples.get(i));
-        }
-        int length2 = table2.tuples.size();
-        for (int i=0; i< length2; i++){
-        	int j=0;
-        	while(j<length1 && !isEqual(this.tuples.get(j), table2.tuples.get(i)) ){
-        		j++;
-        	}
-        	if (j==length1){
-        		result.tuples.add(table2.tuples.get(i));
-        	}
-        }
+        result.tuples.addAll (tuples);
+
+        if (Arrays.equals (key, table2.key) && indexed () && table2.indexed ()) {
+            int [] cols = match (key);                     // probe by key, then compare contents
+            for (Comparable [] tup : table2.tuples) {
+                Comparable [] match = index.get (new KeyType (extractTup (tup, cols)));
+                if (match == null || ! new KeyType (match).equals (new KeyType (tup))) result.tuples.add (tup);
+            } // for
+        } else {
+            Set <KeyType> seen = contents (tuples);
+            for (Comparable [] tup : table2.tuples) {
+                if (seen.add (new KeyType (tup))) result.tuples.add (tup);
+            } // for
+        } // if
 
         return result;
     } // union
 
     /***************************************************************************
      * Take the difference of this table and table2.  Check that the two tables
-     * are compatible.
+     * are compatible.  Tuples are matched on their contents with a hash anti-join,
+     * probing table2's primary index instead when both tables share the key.
      * #usage movie.minus (show)
      * @param table2  the rhs table in the minus operation
      * @return  the table representing the difference (this - table2)
@@ -214,22 +530,29 @@ public class Table
      */
     public Table minus (Table table2)
     {
+        if (versioned () || table2.versioned ()) {            // read both as of the query's start
+            try (Snapshot s = Snapshot.begin ()) {
+                return asOf (s).minus (table2.asOf (s));
+            } // try
+        } // if
+
         out.println ("RA> " + name + ".minus (" + table2.name + ")");
 
-        Table result = new Table (name + count++, attribute, domain, key);
+        Table result = new Table (name + count.getAndIncrement (), attribute, domain, key);
 
 	if ( !this.compatible(table2) ){
 	    System.err.println("Error: Tables not compatible. " + name + " returned.");
-	} else{
-	    for ( int i=0; i<this.tuples.size(); i++ ){
-	        for ( int j=0; j<table2.tuples.size(); j++ ){
-		    if (this.tuples.get(i)==table2.tuples.get(j)){
-		        break;
-		    } else if ( j==table2.tuples.size()-1 ){
-		        result.tuples.add( this.tuples.get(i) );
-		    }
-		}
-	    }
+	} else if (Arrays.equals (key, table2.key) && table2.indexed ()) {
+	    int [] cols = match (key);
+	    for (Comparable [] tup : tuples) {
+	        Comparable [] match = table2.index.get (new KeyType (extractTup (tup, cols)));
+	        if (match == null || ! new KeyType (match).equals (new KeyType (tup))) result.tuples.add (tup);
+	    } // for
+	} else {
+	    Set <KeyType> removed = contents (table2.tuples);
+	    for (Comparable [] tup : tuples) {
+	        if (! removed.contains (new KeyType (tup))) result.tuples.add (tup);
+	    } // for
 	}
 
         return result;
@@ -245,43 +568,995 @@ public class Table
      * (this) to the table containing the primary key (table2).
      * #usage movie.join ("studioNo == name", studio);
      * #usage movieStar.join ("name == s.name", starsIn);
+     * #usage movie.join ("producerNo - 3 <= presNo <= producerNo + 3", studio);
      * @param condition  the join condition for tuples
      * @param table2     the rhs table in the join operation
      * @return  the table representing the join (this |><| table2)
      */
-    public Table join (String condition, Table table2)
+    public Table join (String condition, Table table2)
+    {
+        if (versioned () || table2.versioned ()) {            // read both as of the query's start
+            try (Snapshot s = Snapshot.begin ()) {
+                return asOf (s).join (condition, table2.asOf (s));
+            } // try
+        } // if
+
+        out.println ("RA> " + name + ".join (" + condition + ", " + table2.name + ")");
+
+        JoinCond jc = joinCond (condition, table2);
+        if (jc == null) return new Table (name + count.getAndIncrement (), new String [0], new Class [0], key);
+
+        Table result = new Table (name + count.getAndIncrement (), joinAttribute (table2),
+                                  concat (domain, table2.domain), key);
+
+        if (! jc.op.equals ("==")) {
+            bandJoin (jc, table2, result);
+            return result;
+        } // if
+
+        int []         keyCols = table2.alignToKey (jc.cols2, jc.cols1);
+        SecondaryIndex si      = table2.findIndex (jc.cols2);
+        if (parallel (tuples) && parallel (table2.tuples) &&
+            Math.min (tuples.size (), table2.tuples.size ()) <= HASH_JOIN_LIMIT) {
+            radixJoin (jc, table2, result);
+        } else if (keyCols != null && table2.indexed ()) {
+            indexJoin (keyCols, table2, result);
+        } else if (si != null) {
+            int [] valCols = align (si.cols, jc.cols2, jc.cols1);
+            for (Comparable [] tup : tuples) {
+                for (Comparable [] m : si.get (new KeyType (extractTup (tup, valCols)))) {
+                    result.tuples.add (concat (tup, m));
+                } // for
+            } // for
+        } else if (keyPrefix (jc.cols1) && table2.keyPrefix (jc.cols2) ||
+                   Math.min (tuples.size (), table2.tuples.size ()) > HASH_JOIN_LIMIT) {
+            mergeJoin (jc, table2, result);
+        } else {
+            hashJoin (jc.cols1, table2, jc.cols2, result);
+        } // if
+
+        return result;
+    } // join
+
+    /***************************************************************************
+     * Join this table and table2 by walking both inputs in join-column order in a
+     * single merge pass.  Runs of equal join values on both sides are paired off
+     * by buffering the table2 run.  Inputs ordered by their index are read in
+     * place; the others are sorted, spilling to disk when they are large.
+     * @param jc      the resolved equi-join condition
+     * @param table2  the rhs table in the join operation
+     * @param result  the table receiving the joined tuples
+     */
+    private void mergeJoin (JoinCond jc, Table table2, Table result)
+    {
+        Iterator <Comparable []> it1 = sortedOn (jc.cols1);
+        Iterator <Comparable []> it2 = table2.sortedOn (jc.cols2);
+        List <Comparable []>     run = new ArrayList <> ();
+
+        Comparable [] t1 = it1.hasNext () ? it1.next () : null;
+        Comparable [] t2 = it2.hasNext () ? it2.next () : null;
+        while (t1 != null && t2 != null) {
+            int c = compareOn (t1, jc.cols1, t2, jc.cols2);
+            if (c < 0) {
+                t1 = it1.hasNext () ? it1.next () : null;
+            } else if (c > 0) {
+                t2 = it2.hasNext () ? it2.next () : null;
+            } else {
+                run.clear ();                              // collect the table2 run
+                Comparable [] first = t2;
+                do {
+                    run.add (t2);
+                    t2 = it2.hasNext () ? it2.next () : null;
+                } while (t2 != null && compareOn (first, jc.cols2, t2, jc.cols2) == 0);
+
+                do {                                       // pair it with the table1 run
+                    for (Comparable [] m : run) result.tuples.add (concat (t1, m));
+                    t1 = it1.hasNext () ? it1.next () : null;
+                } while (t1 != null && compareOn (t1, jc.cols1, first, jc.cols2) == 0);
+            } // if
+        } // while
+    } // mergeJoin
+
+    /***************************************************************************
+     * Join this table and table2 on a band of a single attribute pair: the
+     * table2 value b must lie within bounds that are offsets of the value a of
+     * this table (e.g., "year - 5 <= s.year <= year + 5"); an inequality such as
+     * "year < s.year" is a band with one bound.  With both inputs sorted, the
+     * matching table2 tuples for each tuple of this table form a window of
+     * table2 whose two ends only move forward, so all windows are found in one
+     * merge pass.
+     * @param jc      the resolved band join condition
+     * @param table2  the rhs table in the join operation
+     * @param result  the table receiving the joined tuples
+     */
+    @SuppressWarnings("unchecked")
+    private void bandJoin (JoinCond jc, Table table2, Table result)
+    {
+        List <Comparable []> rhs = new ArrayList <> (table2.tuples.size ());
+        for (Iterator <Comparable []> it = table2.sortedOn (jc.cols2); it.hasNext (); ) rhs.add (it.next ());
+
+        int a    = jc.cols1 [0], b = jc.cols2 [0];
+        int n    = rhs.size ();
+        int from = 0, to = 0;                              // the window is rhs [from .. to - 1]
+        for (Iterator <Comparable []> it = sortedOn (jc.cols1); it.hasNext (); ) {
+            Comparable [] t1 = it.next ();
+            if (jc.lo != null) {
+                Comparable lo = jc.lo.at (t1 [a]);
+                while (from < n) {
+                    int c = widen (rhs.get (from) [b]).compareTo (lo);
+                    if (c < 0 || jc.lo.strict && c == 0) from++; else break;
+                } // while
+            } // if
+            if (jc.hi != null) {
+                Comparable hi = jc.hi.at (t1 [a]);
+                while (to < n) {
+                    int c = widen (rhs.get (to) [b]).compareTo (hi);
+                    if (c < 0 || ! jc.hi.strict && c == 0) to++; else break;
+                } // while
+            } else {
+                to = n;
+            } // if
+            for (int k = from; k < to; k++) result.tuples.add (concat (t1, rhs.get (k)));
+        } // for
+    } // bandJoin
+
+    /***************************************************************************
+     * Return the tuples of this table in ascending order on the given columns.
+     * When the columns are a prefix of the primary key, the ordered index is read
+     * directly; when the tuples are already in order they are returned as is;
+     * otherwise they are sorted by an external merge sort.
+     * @param cols  the column positions to order on
+     * @return  an iterator over the tuples in column order
+     */
+    private Iterator <Comparable []> sortedOn (int [] cols)
+    {
+        if (keyPrefix (cols)) return index.values ().iterator ();
+
+        Comparator <Comparable []> cmp = (a, b) -> compareOn (a, cols, b, cols);
+        Comparable [] prev = null;
+        boolean sorted = true;
+        for (Iterator <Comparable []> it = tuples.iterator (); sorted && it.hasNext (); ) {
+            Comparable [] tup = it.next ();
+            sorted = prev == null || cmp.compare (prev, tup) <= 0;
+            prev   = tup;
+        } // for
+        if (sorted) return tuples.iterator ();
+
+        return ExternalSort.sort (tuples.iterator (), cmp, SORT_RUN_SIZE);
+    } // sortedOn
+
+    /***************************************************************************
+     * Determine whether the given columns are a leading prefix of the primary key
+     * (in key order) and the ordered index covers every tuple, so iterating the
+     * index yields the tuples ordered on those columns.
+     * @param cols  the column positions to check
+     * @return  whether the ordered index can supply the tuples sorted on cols
+     */
+    private boolean keyPrefix (int [] cols)
+    {
+        if (! (index instanceof SortedMap) || ! indexed ()) return false;
+        int [] keyPos = match (key);
+        if (cols.length > keyPos.length) return false;
+        for (int i = 0; i < cols.length; i++) {
+            if (cols [i] != keyPos [i]) return false;
+        } // for
+        return true;
+    } // keyPrefix
+
+    /***************************************************************************
+     * Join this table and table2 when the join columns form table2's entire
+     * primary key, probing table2's index once per tuple of this table (index
+     * nested-loop join).  No hash table is built and table2 is never scanned.
+     * @param keyCols  the columns of this table matching table2's key, in key order
+     * @param table2   the rhs table in the join operation
+     * @param result   the table receiving the joined tuples
+     */
+    private void indexJoin (int [] keyCols, Table table2, Table result)
+    {
+        for (Comparable [] tup : tuples) {
+            Comparable [] match = table2.index.get (new KeyType (extractTup (tup, keyCols)));
+            if (match != null) result.tuples.add (concat (tup, match));
+        } // for
+    } // indexJoin
+
+    /***************************************************************************
+     * If the given columns of this table are exactly its primary key (in any
+     * order), reorder the paired columns of the other table into key order.
+     * @param cols       the column positions in this table
+     * @param otherCols  the paired column positions in the other table
+     * @return  otherCols permuted into key order, or null if cols is not the key
+     */
+    private int [] alignToKey (int [] cols, int [] otherCols)
+    {
+        return align (match (key), cols, otherCols);
+    } // alignToKey
+
+    /***************************************************************************
+     * If cols holds exactly the target columns (in any order), reorder the
+     * paired otherCols so they line up with the target.
+     * @param target     the column positions in the desired order
+     * @param cols       the column positions to match against the target
+     * @param otherCols  the columns paired with cols
+     * @return  otherCols permuted into target order, or null if cols differs from target
+     */
+    private static int [] align (int [] target, int [] cols, int [] otherCols)
+    {
+        if (target.length != cols.length) return null;
+
+        int [] aligned = new int [target.length];
+        for (int i = 0; i < target.length; i++) {
+            int j = 0;
+            while (j < cols.length && cols [j] != target [i]) j++;
+            if (j == cols.length) return null;
+            aligned [i] = otherCols [j];
+        } // for
+        return aligned;
+    } // align
+
+    /***************************************************************************
+     * Determine whether the primary index covers every tuple, i.e., all tuples
+     * were added through insert and no two share a key.  Tables produced by the
+     * relational operators fill tuples directly and are not indexed.  Sizing a
+     * concurrent index means traversing it, and inserts in progress make the
+     * two sizes differ for a moment, so a concurrent index (only ever filled by
+     * insert, bulkLoad or load) counts as covering unless a key was repeated.
+     * A snapshot view (see asOf) is always indexed, as its index resolves the
+     * same versions as its tuples, while a versioned table itself is only read
+     * through such views.
+     * @return  whether the index may be used in place of scanning tuples
+     */
+    private boolean indexed ()
+    {
+        if (tuples instanceof VersionList.View) return true;
+        if (versioned ()) return false;
+        if (index instanceof ConcurrentMap) return ! shadowed;
+        return index.size () == tuples.size ();
+    } // indexed
+
+    /***************************************************************************
+     * Join this table and table2 by building a hash table on the smaller input's
+     * join columns and streaming the larger input through it, so the cost grows
+     * with |R| + |S| rather than |R| * |S|.  Result tuples are always laid out as
+     * this tuple followed by the table2 tuple.
+     * @param cols1   the join column positions in this table
+     * @param table2  the rhs table in the join operation
+     * @param cols2   the join column positions in table2
+     * @param result  the table receiving the joined tuples
+     */
+    private void hashJoin (int [] cols1, Table table2, int [] cols2, Table result)
+    {
+        boolean buildLeft = tuples.size () <= table2.tuples.size ();
+        List <Comparable []> build = buildLeft ? tuples : table2.tuples;
+        List <Comparable []> probe = buildLeft ? table2.tuples : tuples;
+        int [] bCols = buildLeft ? cols1 : cols2;
+        int [] pCols = buildLeft ? cols2 : cols1;
+
+        Map <KeyType, List <Comparable []>> table = new HashMap <> ();
+        for (Comparable [] tup : build) {
+            table.computeIfAbsent (new KeyType (extractTup (tup, bCols)), k -> new ArrayList <> ()).add (tup);
+        } // for
+
+        for (Comparable [] tup : probe) {
+            List <Comparable []> matches = table.get (new KeyType (extractTup (tup, pCols)));
+            if (matches == null) continue;
+            for (Comparable [] m : matches) {
+                result.tuples.add (buildLeft ? concat (m, tup) : concat (tup, m));
+            } // for
+        } // for
+    } // hashJoin
+
+    /***************************************************************************
+     * Join this table and table2, both large and in memory, by a parallel
+     * radix-partitioned hash join.  Both inputs are split into the same number
+     * of partitions on the low bits of their join-key hash (see partition), with
+     * enough partitions that the hash table on each build partition fits in
+     * cache; then each pair of partitions is joined as a separate task on the
+     * common ForkJoinPool, building a chained hash table on the smaller input's
+     * partition and probing it with the other's.  Result tuples are laid out as
+     * this tuple followed by the table2 tuple.
+     * @param jc      the resolved equi-join condition
+     * @param table2  the rhs table in the join operation
+     * @param result  the table receiving the joined tuples
+     */
+    @SuppressWarnings("unchecked")
+    private void radixJoin (JoinCond jc, Table table2, Table result)
+    {
+        boolean buildLeft = tuples.size () <= table2.tuples.size ();
+        int     nBuild    = Math.min (tuples.size (), table2.tuples.size ());
+        int     bits      = Math.max (1, 32 - Integer.numberOfLeadingZeros (nBuild / RADIX_PART_SIZE));
+        Partitioned build = partition (buildLeft ? tuples : table2.tuples, buildLeft ? jc.cols1 : jc.cols2, bits);
+        Partitioned probe = partition (buildLeft ? table2.tuples : tuples, buildLeft ? jc.cols2 : jc.cols1, bits);
+        int []      bCols = buildLeft ? jc.cols1 : jc.cols2;
+        int []      pCols = buildLeft ? jc.cols2 : jc.cols1;
+
+        List <Comparable []> [] part = new List [1 << bits];
+        IntStream.range (0, part.length).parallel ().forEach (p -> {
+            int lo = build.start [p], n = build.start [p + 1] - lo;
+            List <Comparable []> joined = new ArrayList <> ();
+            part [p] = joined;
+            if (n == 0) return;
+
+            int    mask = Integer.highestOneBit (n) * 2 - 1;   // chained hash table on the rest of the hash
+            int [] head = new int [mask + 1];
+            int [] next = new int [n];
+            Arrays.fill (head, -1);
+            for (int i = 0; i < n; i++) {
+                int b = (build.hash [lo + i] >>> bits) & mask;
+                next [i] = head [b];
+                head [b] = i;
+            } // for
+
+            for (int j = probe.start [p]; j < probe.start [p + 1]; j++) {
+                int           h = probe.hash [j];
+                Comparable [] t = probe.tup [j];
+                for (int i = head [(h >>> bits) & mask]; i >= 0; i = next [i]) {
+                    Comparable [] m = build.tup [lo + i];
+                    if (build.hash [lo + i] == h && compareOn (m, bCols, t, pCols) == 0) {
+                        joined.add (buildLeft ? concat (m, t) : concat (t, m));
+                    } // if
+                } // for
+            } // for
+        });
+
+        int total = 0;
+        for (List <Comparable []> p : part) total += p.size ();
+        ((ArrayList <Comparable []>) result.tuples).ensureCapacity (total);
+        for (List <Comparable []> p : part) result.tuples.addAll (p);
+    } // radixJoin
+
+    /***************************************************************************
+     * Partition tuples on the low bits of the hash of their join columns, in
+     * parallel: each chunk of tuples counts its tuples per partition, prefix sums
+     * of the counts give each chunk its slots in every partition, and the chunks
+     * then scatter their tuples (and hashes) into place.
+     * @param tups  the tuples to partition (a random access list)
+     * @param cols  the join column positions
+     * @param bits  the number of hash bits to partition on
+     * @return  the tuples grouped by partition
+     */
+    private static Partitioned partition (List <Comparable []> tups, int [] cols, int bits)
+    {
+        int        n      = tups.size ();
+        int        nParts = 1 << bits;
+        int        nChunk = (n + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+        int []     hash   = new int [n];
+        int [][]   slot   = new int [nChunk][nParts];
+        IntStream.range (0, nChunk).parallel ().forEach (c -> {
+            for (int i = c * PARALLEL_CHUNK; i < Math.min (n, (c + 1) * PARALLEL_CHUNK); i++) {
+                hash [i] = hashOn (tups.get (i), cols);
+                slot [c][hash [i] & (nParts - 1)]++;
+            } // for
+        });
+
+        Partitioned part = new Partitioned (n, nParts);
+        int         sum  = 0;
+        for (int p = 0; p < nParts; p++) {
+            part.start [p] = sum;
+            for (int c = 0; c < nChunk; c++) {
+                int count = slot [c][p];
+                slot [c][p] = sum;
+                sum += count;
+            } // for
+        } // for
+        part.start [nParts] = sum;
+
+        IntStream.range (0, nChunk).parallel ().forEach (c -> {
+            int [] at = slot [c];
+            for (int i = c * PARALLEL_CHUNK; i < Math.min (n, (c + 1) * PARALLEL_CHUNK); i++) {
+                int k = at [hash [i] & (nParts - 1)]++;
+                part.tup [k]  = tups.get (i);
+                part.hash [k] = hash [i];
+            } // for
+        });
+        return part;
+    } // partition
+
+    /***************************************************************************
+     * Hash the values of a tuple's join columns (a composite key hashes all of
+     * them), mixing the bits so the low bits used for partitioning are spread.
+     * @param tup   the tuple
+     * @param cols  the join column positions
+     * @return  the hash
+     */
+    private static int hashOn (Comparable [] tup, int [] cols)
+    {
+        int h = 1;
+        for (int c : cols) h = 31 * h + tup [c].hashCode ();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ h >>> 16;
+    } // hashOn
+
+    /***************************************************************************
+     * Resolve a join condition into pairs of column positions.  Each side of the
+     * comparison lists one or more attributes (e.g., "movieTitle movieYear == title year").
+     * An unqualified attribute is taken from this table when it exists there and
+     * from table2 otherwise; qualifying it with the first letter of table2's name
+     * (e.g., "s.name") forces table2.  Pairs written in reverse order are swapped.
+     * Besides "==", a single pair of attributes may be compared by "<", "<=", ">"
+     * or ">=" (e.g., "year < s.year"), or bounded on both sides (see bandCond).
+     * @param condition  the join condition
+     * @param table2     the rhs table in the join operation
+     * @return  the resolved condition or null if ill-formed
+     */
+    private JoinCond joinCond (String condition, Table table2)
+    {
+        String [] token = condition.trim ().split (" +");
+        int nOps = 0;
+        for (String t : token) if (isComparison (t)) nOps++;
+        if (nOps == 2) return bandCond (token, table2);
+
+        int opPos = 0;
+        while (opPos < token.length && ! isComparison (token [opPos])) opPos++;
+        String op = opPos < token.length ? token [opPos] : "";
+        if (op.equals ("") || op.equals ("!=")) {
+            out.println ("join: error - condition must have the form \"a1 a2 == b1 b2\"");
+            return null;
+        } // if
+        String [] lhs = Arrays.copyOfRange (token, 0, opPos);
+        String [] rhs = Arrays.copyOfRange (token, opPos + 1, token.length);
+        if (lhs.length != rhs.length || lhs.length == 0) {
+            out.println ("join: error - unequal number of join attributes");
+            return null;
+        } // if
+        if (! op.equals ("==") && lhs.length != 1) {
+            out.println ("join: error - " + op + " joins take a single attribute pair");
+            return null;
+        } // if
+
+        String qual  = table2.name.charAt (0) + ".";
+        int [] cols1 = new int [lhs.length];
+        int [] cols2 = new int [lhs.length];
+        for (int i = 0; i < lhs.length; i++) {
+            boolean lhsIn2 = lhs [i].startsWith (qual) || indexOf (attribute, lhs [i]) < 0;
+            boolean rhsIn2 = rhs [i].startsWith (qual) || indexOf (attribute, rhs [i]) < 0
+                          || ! lhsIn2 && indexOf (table2.attribute, rhs [i]) >= 0;
+            if (lhsIn2 && ! rhsIn2) {
+                cols1 [i] = indexOf (attribute, rhs [i]);
+                cols2 [i] = indexOf (table2.attribute, strip (lhs [i], qual));
+                op = flip (op);
+            } else if (! lhsIn2 && rhsIn2) {
+                cols1 [i] = indexOf (attribute, lhs [i]);
+                cols2 [i] = indexOf (table2.attribute, strip (rhs [i], qual));
+            } else {
+                cols1 [i] = cols2 [i] = -1;
+            } // if
+            if (cols1 [i] < 0 || cols2 [i] < 0) {
+                out.println ("join: error - cannot resolve " + lhs [i] + " " + op + " " + rhs [i]);
+                return null;
+            } // if
+
+            if (domain [cols1 [i]] != table2.domain [cols2 [i]]) {
+                out.println ("join: error - domains of " + attribute [cols1 [i]] + " and "
+                           + table2.attribute [cols2 [i]] + " differ");
+                return null;
+            } // if
+        } // for
+
+        switch (op) {                                      // b is bounded below or above by a
+        case "<":  return new JoinCond (cols1, cols2, op, new Bound (null, true), null);
+        case "<=": return new JoinCond (cols1, cols2, op, new Bound (null, false), null);
+        case ">":  return new JoinCond (cols1, cols2, op, null, new Bound (null, true));
+        case ">=": return new JoinCond (cols1, cols2, op, null, new Bound (null, false));
+        default:   return new JoinCond (cols1, cols2, op, null, null);
+        } // switch
+    } // joinCond
+
+    /***************************************************************************
+     * Resolve a band join condition, which bounds an attribute b of table2 on
+     * both sides by an attribute a of this table plus or minus a constant, e.g.,
+     * "year - 5 <= s.year <= year + 5" or "year <= s.year < year + 10" (the
+     * bounds may also be written with ">" and ">=", largest first).  Both bounds
+     * must use the same attribute a, of the same domain as b, and constants need
+     * a numeric domain.
+     * @param token   the tokens of the condition (holding two comparisons)
+     * @param table2  the rhs table in the join operation
+     * @return  the resolved condition or null if ill-formed
+     */
+    private JoinCond bandCond (String [] token, Table table2)
+    {
+        int op1 = 0;
+        while (! isComparison (token [op1])) op1++;
+        int op2 = op1 + 1;
+        while (! isComparison (token [op2])) op2++;
+
+        String [] lower = Arrays.copyOfRange (token, 0, op1);
+        String [] upper = Arrays.copyOfRange (token, op2 + 1, token.length);
+        String    o1    = token [op1], o2 = token [op2];
+        if (o1.startsWith (">") && o2.startsWith (">")) {        // written largest first
+            String [] t = lower; lower = upper; upper = t;
+            String    o = o1;    o1    = flip (o2); o2 = flip (o);
+        } // if
+        if (! o1.startsWith ("<") || ! o2.startsWith ("<") || op2 != op1 + 2) {
+            out.println ("join: error - band condition must have the form \"a - k1 <= b <= a + k2\"");
+            return null;
+        } // if
+
+        String qual = table2.name.charAt (0) + ".";
+        int    b    = indexOf (table2.attribute, strip (token [op1 + 1], qual));
+        int    a    = lower.length > 0 ? indexOf (attribute, lower [0]) : -1;
+        if (b < 0 || a < 0 || upper.length == 0 || indexOf (attribute, upper [0]) != a) {
+            out.println ("join: error - cannot resolve band " + String.join (" ", token));
+            return null;
+        } // if
+        if (domain [a] != table2.domain [b]) {
+            out.println ("join: error - domains of " + attribute [a] + " and " + table2.attribute [b] + " differ");
+            return null;
+        } // if
+
+        Comparable loOff = offset (lower, a), hiOff = offset (upper, a);
+        if (loOff == null && lower.length > 1 || hiOff == null && upper.length > 1) {
+            out.println ("join: error - bad offset in band " + String.join (" ", token));
+            return null;
+        } // if
+        return new JoinCond (new int [] { a }, new int [] { b }, "band",
+                             new Bound (loOff, o1.equals ("<")), new Bound (hiOff, o2.equals ("<")));
+    } // bandCond
+
+    /***************************************************************************
+     * Parse the constant in a band bound of the form "a", "a + k" or "a - k".
+     * @param bound  the tokens of the bound
+     * @param a      the column of attribute a
+     * @return  the signed constant k (null if absent or ill-formed)
+     */
+    private Comparable offset (String [] bound, int a)
+    {
+        if (bound.length != 3 || ! Number.class.isAssignableFrom (domain [a])) return null;
+        if (! bound [1].equals ("+") && ! bound [1].equals ("-")) return null;
+        try {
+            return parser (domain [a]).apply (bound [1].equals ("-") ? "-" + bound [2] : bound [2]);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        } // try
+    } // offset
+
+    /***************************************************************************
+     * Build the attribute names for the join of this table with table2, prefixing
+     * table2's names that clash with this table's by its first letter (e.g., "s_name").
+     * @param table2  the rhs table in the join operation
+     * @return  the attribute names of the joined table
+     */
+    private String [] joinAttribute (Table table2)
+    {
+        String [] attr2 = new String [table2.attribute.length];
+        for (int j = 0; j < attr2.length; j++) {
+            String a = table2.attribute [j];
+            attr2 [j] = indexOf (attribute, a) >= 0 ? table2.name.charAt (0) + "_" + a : a;
+        } // for
+        return concat (attribute, attr2);
+    } // joinAttribute
+
+/***************************************************************************
+     * Insert a tuple to the table.  In a versioned table, a tuple whose key is
+     * already present becomes the key's new version, and queries that began
+     * earlier still see the old one.  A table whose tuples are packed into
+     * records (on disk or in a write-ahead log) rejects Strings that do not fit
+     * (see packable).
+     * #usage movie.insert ("'Star_Wars'", 1977, 124, "T", "Fox", 12345)
+     * @param tup  the array of attribute values forming the tuple
+     * @return  whether insertion was successful
+     */
+    public boolean insert (Comparable [] tup)
+    {
+        out.println ("DML> insert into " + name + " values ( " + Arrays.toString (tup) + " )");
+
+        if (! typeCheck (tup, domain) || ! packable (tup)) return false;
+        WriteAheadLog log = wal;
+        if (log == null) {
+            apply (tup);
+            return true;
+        } // if
+        Lock lock = logLock.readLock ();
+        lock.lock ();
+        try {
+            log.append (tup);
+            apply (tup);
+            return true;
+        } catch (IllegalStateException | UncheckedIOException ex) {   // log closed or its write failed
+            out.println ("insert: error - " + ex.getMessage ());
+            return false;
+        } finally {
+            lock.unlock ();
+        } // try
+    } // insert
+
+    /***************************************************************************
+     * Add a checked tuple to every index and then to the tuples, so a select
+     * running alongside finds by key every tuple it can scan.
+     * @param tup  the tuple to add
+     */
+    private void apply (Comparable [] tup)
+    {
+        Comparable [] keyVal = new Comparable [key.length];
+        int []        cols   = match (key);
+        for (int j = 0; j < keyVal.length; j++) keyVal [j] = tup [cols [j]];
+        if (versioned ()) {                                   // the list tracks each key's current version
+            ((VersionList) tuples).insert (new KeyType (keyVal), tup);
+            return;
+        } // if
+        int pos = tuples.size ();
+        if (indexPut (new KeyType (keyVal), tup, pos)) shadowed = true;
+        for (SecondaryIndex si : secondary) si.add (tup);
+        tuples.add (tup);                                     // publish only once indexed
+    } // apply
+
+    /***************************************************************************
+     * Determine whether a tuple can be stored without loss.  When the tuples
+     * are packed into fixed-size records, on disk (see FileList) or in the
+     * write-ahead log, a String must have at most STRING_SIZE / 2 chars and not
+     * end in '\0' (see pack); otherwise any tuple can be stored.
+     * @param tup  the type-checked tuple
+     * @return  whether the tuple can be stored, after reporting it if not
+     */
+    private boolean packable (Comparable [] tup)
+    {
+        if (! (tuples instanceof FileList) && wal == null) return true;
+        for (int j = 0; j < domain.length; j++) {
+            if (domain [j] != String.class) continue;
+            String str = (String) tup [j];
+            if (str.length () > STRING_SIZE / 2 || str.endsWith ("\0")) {
+                out.println (name + ": error - " + attribute [j] + " value does not fit in " + STRING_SIZE / 2
+                           + " chars: " + str);
+                return false;
+            } // if
+        } // for
+        return true;
+    } // packable
+
+    /***************************************************************************
+     * Put the key of a tuple in the primary index.
+     * @param k    the key
+     * @param tup  the tuple
+     * @param pos  the position of the tuple in tuples (kept by a RowIndex)
+     * @return  whether the key was already indexed (so two tuples share it)
+     */
+    private boolean indexPut (KeyType k, Comparable [] tup, int pos)
+    {
+        if (index instanceof RowIndex) return ((RowIndex) index).place (k, pos) != null;
+        return index.put (k, tup) != null;
+    } // indexPut
+
+    /***************************************************************************
+     * Index a run of tuples with ascending keys, added at consecutive positions
+     * of tuples, into the empty primary index, building it bottom-up where the
+     * map allows (see BPTreeMap.loadSorted).  A RowIndex is built the same way
+     * from the keys and positions.
+     * @param run    the keys and tuples in strictly ascending key order
+     * @param first  the position of the first tuple
+     * @throws IllegalArgumentException  if the keys are not ascending
+     */
+    private void buildIndex (List <Map.Entry <KeyType, Comparable []>> run, int first)
+    {
+        if (index instanceof RowIndex) {
+            BPTreeMap.loadSorted (((RowIndex) index).rows, IntStream.range (0, run.size ())
+                     .mapToObj (i -> new AbstractMap.SimpleImmutableEntry <> (run.get (i).getKey (), first + i))
+                     .iterator ());
+        } else {
+            BPTreeMap.loadSorted (index, run.iterator ());
+        } // if
+    } // buildIndex
+
+    /***************************************************************************
+     * Open a write-ahead log for this table.  The tuples in the log after the
+     * LSN the table already includes (those inserted since it was last saved,
+     * before a crash or shutdown) are replayed into the table, rebuilding its
+     * indexes, and from then on every insert is logged before it is applied.
+     * #usage movie.openLog ("movie.wal", Durability.GROUP)
+     * @param path        the log file (created if it does not exist)
+     * @param durability  when a logged insert reaches the disk
+     * @return  whether the log was opened
+     */
+    public boolean openLog (String path, Durability durability)
+    {
+        out.println ("DDL> open log " + path + " for " + name + " (" + durability + ")");
+
+        if (wal != null) {
+            out.println ("openLog: error - a log is already open for " + name);
+            return false;
+        } // if
+        try {
+            WriteAheadLog log = new WriteAheadLog (new File (path), this, durability);
+            int n = log.replay (logged, this::apply);
+            if (n > 0) out.println ("openLog: replayed " + n + " tuples into " + name);
+            if (logLock == null) logLock = new ReentrantReadWriteLock ();
+            wal = log;
+            return true;
+        } catch (IllegalArgumentException | UncheckedIOException ex) {
+            out.println ("openLog: error - " + ex.getMessage ());
+            return false;
+        } // try
+    } // openLog
+
+    /***************************************************************************
+     * Force and close the write-ahead log, if one is open.
+     */
+    public void closeLog ()
+    {
+        if (wal != null) {
+            wal.close ();
+            logged = wal.position ();
+            wal = null;
+        } // if
+    } // closeLog
+
+    /***************************************************************************
+     * Close the table, releasing what it holds outside the heap: its write-ahead
+     * log is closed, and if its tuples are on disk (see FileList), their file is
+     * deleted and its pages dropped from the buffer pool.  The table must not be
+     * used afterwards.
+     * #usage movie.close ()
+     */
+    public void close ()
+    {
+        out.println ("DDL> close " + name);
+
+        closeLog ();
+        if (tuples instanceof FileList) ((FileList) tuples).close ();
+    } // close
+
+    /***************************************************************************
+     * Load many tuples at once.  Unlike calling insert per tuple, nothing is
+     * printed per tuple, the key positions are found once, and tuples are
+     * checked against the domains (by Class identity), logged and appended a
+     * chunk of BULK_CHUNK at a time.  While the keys arrive in ascending order
+     * into an empty ordered index, the index entries are collected and the
+     * index is built bottom-up at the end (see buildIndex); otherwise each entry
+     * is put as it arrives.  A concurrent index is never deferred: each chunk
+     * is indexed before its tuples are appended, so a select running alongside
+     * the load finds by key every tuple it can scan.  Tuples that fail the check
+     * are reported and skipped.
+     * #usage movie.bulkLoad (rows.iterator ())
+     * @param rows  the tuples to load
+     * @return  the number of tuples loaded
+     */
+    public int bulkLoad (Iterator <Comparable []> rows)
+    {
+        out.println ("DML> bulk load into " + name);
+
+        int []                                    keyPos = match (key);
+        boolean                                   shared = index instanceof ConcurrentMap;
+        boolean                                   sorted = ! shared && index.isEmpty () && index instanceof SortedMap;
+        List <Map.Entry <KeyType, Comparable []>> run    = new ArrayList <> ();
+        int                                       first  = tuples.size ();  // position of run's first tuple
+        List <Comparable []>                      chunk  = new ArrayList <> (BULK_CHUNK);
+        int                                       loaded = 0, rejected = 0;
+
+        while (rows.hasNext ()) {
+            chunk.clear ();
+            while (chunk.size () < BULK_CHUNK && rows.hasNext ()) {
+                Comparable [] tup = rows.next ();
+                if (! typeCheck (tup, domain)) {
+                    if (rejected++ < 10) out.println ("bulkLoad: error - tuple does not match the domains "
+                                                      + Arrays.toString (tup));
+                } else if (packable (tup)) {
+                    chunk.add (tup);
+                } else {
+                    rejected++;
+                } // if
+            } // while
+
+            WriteAheadLog log  = wal;
+            Lock          lock = log == null ? null : logLock.readLock ();
+            if (lock != null) lock.lock ();
+            try {
+                if (log != null) {
+                    try {
+                        log.appendAll (chunk);
+                    } catch (IllegalStateException | UncheckedIOException ex) {
+                        out.println ("bulkLoad: error - " + ex.getMessage ());
+                        break;
+                    } // try
+                } // if
+                if (versioned ()) {                           // each tuple is a new version
+                    for (Comparable [] tup : chunk) apply (tup);
+                    loaded += chunk.size ();
+                    continue;
+                } // if
+                int pos = tuples.size ();
+                if (! shared) tuples.addAll (chunk);
+                for (Comparable [] tup : chunk) {
+                    Comparable [] keyVal = new Comparable [keyPos.length];
+                    for (int j = 0; j < keyPos.length; j++) keyVal [j] = tup [keyPos [j]];
+                    KeyType k = new KeyType (keyVal);
+                    if (sorted && (run.isEmpty () || run.get (run.size () - 1).getKey ().compareTo (k) < 0)) {
+                        run.add (new AbstractMap.SimpleImmutableEntry <> (k, tup));
+                    } else {
+                        if (sorted) {                               // out of order: index what came so far
+                            for (Map.Entry <KeyType, Comparable []> e : run) indexPut (e.getKey (), e.getValue (), first++);
+                            run.clear ();
+                            sorted = false;
+                        } // if
+                        if (indexPut (k, tup, pos)) shadowed = true;
+                    } // if
+                    for (SecondaryIndex si : secondary) si.add (tup);
+                    pos++;
+                } // for
+                if (shared) tuples.addAll (chunk);           // publish only once indexed
+                loaded += chunk.size ();
+            } finally {
+                if (lock != null) lock.unlock ();
+            } // try
+        } // while
+        if (! run.isEmpty ()) buildIndex (run, first);
+
+        if (rejected > 0) out.println ("bulkLoad: " + rejected + " tuples rejected");
+        out.println ("DML> loaded " + loaded + " tuples into " + name);
+        return loaded;
+    } // bulkLoad
+
+    /***************************************************************************
+     * Load tuples from a CSV file with one tuple per record and the values in
+     * attribute order, separated by commas (see splitCSV: a value enclosed in
+     * double quotes may hold commas, quotes and line breaks).  A first record
+     * naming the attributes is skipped.  Each column's parser is chosen once
+     * from its domain, and the tuples are handed to bulkLoad as they are read;
+     * records that cannot be parsed are reported and skipped.
+     * #usage movie.loadCSV ("movie.csv")
+     * @param path  the CSV file
+     * @return  the number of tuples loaded, or -1 if the file could not be read
+     */
+    public int loadCSV (String path)
+    {
+        List <Function <String, Comparable>> parse = new ArrayList <> ();
+        for (Class d : domain) parse.add (parser (d));
+        List <String> header = Arrays.asList (attribute);
+
+        try (BufferedReader in = new BufferedReader (new FileReader (path), 1 << 16)) {
+            return bulkLoad (new Iterator <Comparable []> () {
+                int           lineNo = 0;
+                Comparable [] next   = advance ();
+
+                Comparable [] advance ()
+                {
+                    String line;
+                    try {
+                        while ((line = in.readLine ()) != null) {
+                            int start = ++lineNo;
+                            if (line.isEmpty ()) continue;
+                            try {
+                                List <String> field;
+                                while ((field = splitCSV (line)) == null) {       // a quoted value spans lines
+                                    String more = in.readLine ();
+                                    if (more == null) throw new IllegalArgumentException ("unclosed quote");
+                                    lineNo++;
+                                    line += "\n" + more;
+                                } // while
+                                if (start == 1 && field.equals (header)) continue;
+                                if (field.size () != domain.length) {
+                                    throw new IllegalArgumentException (field.size () + " values, not " + domain.length);
+                                } // if
+                                Comparable [] tup = new Comparable [field.size ()];
+                                for (int j = 0; j < tup.length; j++) tup [j] = parse.get (j).apply (field.get (j));
+                                return tup;
+                            } catch (IllegalArgumentException ex) {
+                                out.println ("loadCSV: error - line " + start + ": " + ex.getMessage ());
+                            } // try
+                        } // while
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException (ex);
+                    } // try
+                    return null;
+                } // advance
+
+                public boolean hasNext () { return next != null; }
+
+                public Comparable [] next ()
+                {
+                    if (next == null) throw new NoSuchElementException ();
+                    Comparable [] tup = next;
+                    next = advance ();
+                    return tup;
+                } // next
+            });
+        } catch (IOException | UncheckedIOException ex) {
+            out.println ("loadCSV: error - " + ex.getMessage ());
+            return -1;
+        } // try
+    } // loadCSV
+
+    /***************************************************************************
+     * Split a CSV record into its values.  Values are separated by commas.  A
+     * value enclosed in double quotes is taken as is, and may hold commas, line
+     * breaks and double quotes (each written twice); any other value is trimmed.
+     * @param rec  the record
+     * @return  the values, or null if the record ends inside a quoted value
+     * @throws IllegalArgumentException  if anything but blanks follows a closing quote
+     */
+    private static List <String> splitCSV (String rec)
+    {
+        List <String> field = new ArrayList <> ();
+        StringBuilder value = new StringBuilder ();
+        int           n     = rec.length ();
+        for (int i = 0; ; i++) {                              // i is at the start of a value
+            while (i < n && rec.charAt (i) == ' ') i++;
+            if (i < n && rec.charAt (i) == '"') {
+                for (i++; ; i++) {
+                    if (i == n) return null;
+                    char c = rec.charAt (i);
+                    if (c == '"' && i + 1 < n && rec.charAt (i + 1) == '"') value.append (rec.charAt (i++));
+                    else if (c == '"') break;
+                    else value.append (c);
+                } // for
+                for (i++; i < n && rec.charAt (i) == ' '; i++) ;
+                if (i < n && rec.charAt (i) != ',') throw new IllegalArgumentException ("text after a closing quote");
+                field.add (value.toString ());
+                value.setLength (0);
+            } else {
+                int end = rec.indexOf (',', i);
+                if (end < 0) end = n;
+                field.add (rec.substring (i, end).trim ());
+                i = end;
+            } // if
+            if (i >= n) return field;
+        } // for
+    } // splitCSV
+
+    /***************************************************************************
+     * Create a secondary index on the given attributes.  Unlike the primary
+     * index, several tuples may share the indexed values.  The index is built
+     * from the current tuples and kept up to date by insert; select and join use
+     * it when their condition matches its attributes.
+     * #usage movie.createIndex ("studioName", IndexKind.HASH)
+     * @param attributes  the attributes to index
+     * @param kind        the kind of index (HASH or ORDERED)
+     * @return  whether the index was created
+     */
+    public boolean createIndex (String attributes, IndexKind kind)
     {
-        out.println ("RA> " + name + ".join (" + condition + ", " + table2.name + ")");
+        out.println ("DDL> create " + kind + " index on " + name + " (" + attributes + ")");
 
-        Table result = new Table (name + count++, new String [0], new Class [0], key);
+        if (versioned ()) {
+            out.println ("createIndex: error - secondary indexes are not kept for versioned tables");
+            return false;
+        } // if
+        String [] attrs = attributes.split (" ");
+        int []    cols  = match (attrs);
+        for (int c : cols) if (c < 0) return false;
 
-             //-----------------\\ 
-            // TO BE IMPLEMENTED \\
-           //---------------------\\ 
+        SecondaryIndex si = new SecondaryIndex (attrs, cols, kind, tuples instanceof AppendList);
+        for (Comparable [] tup : tuples) si.add (tup);
+        secondary.add (si);
+        return true;
+    } // createIndex
 
-        return result;
-    } // join
-/***************************************************************************
-     * Insert a tuple to the table.
-     * #usage movie.insert ("'Star_Wars'", 1977, 124, "T", "Fox", 12345)
-     * @param tup  the array of attribute values forming the tuple
-     * @return  whether insertion was successful
+    /***************************************************************************
+     * Find a secondary index on exactly the given columns (in any order).
+     * @param cols  the column positions
+     * @return  the matching index, or null if there is none
      */
-    public boolean insert (Comparable [] tup)
+    private SecondaryIndex findIndex (int [] cols)
     {
-        out.println ("DML> insert into " + name + " values ( " + Arrays.toString (tup) + " )");
+        for (SecondaryIndex si : secondary) {
+            if (align (si.cols, cols, cols) != null) return si;
+        } // for
+        return null;
+    } // findIndex
 
-        if (typeCheck (tup, domain)) {
-            tuples.add (tup);
-            Comparable [] keyVal = new Comparable [key.length];
-            int []        cols   = match (key);
-            for (int j = 0; j < keyVal.length; j++) keyVal [j] = tup [cols [j]];
-            index.put (new KeyType (keyVal), tup);
-            return true;
-        } else {
-            return false;
-        } // if
-    } // insert
+    /***************************************************************************
+     * Return this table as of a snapshot: for a versioned table, a read-only
+     * view of the versions visible in the snapshot, which later inserts do not
+     * change; for any other table, the table itself.  Each query on a versioned
+     * table takes a snapshot of its own, so a snapshot is needed only to give
+     * several queries the same view.
+     * #usage try (Snapshot s = Snapshot.begin ()) { movie.asOf (s).join (...) }
+     * @param s  the snapshot (open until the view is no longer used)
+     * @return  the table as of the snapshot
+     */
+    public Table asOf (Snapshot s)
+    {
+        return versioned () ? new Table (this, ((VersionList) tuples).asOf (s)) : this;
+    } // asOf
+
+    /***************************************************************************
+     * Determine whether the table keeps versions of its tuples.
+     * @return  whether the tuples are in a VersionList
+     */
+    private boolean versioned ()
+    {
+        return tuples instanceof VersionList;
+    } // versioned
 
     /***************************************************************************
      * Get the name of the table.
@@ -291,6 +1566,20 @@ public class Table
     {
         return name;
     } // getName
+
+    /***************************************************************************
+     * Return the number of tuples in the table.
+     * @return  the size of the table
+     */
+    public int size ()
+    {
+        if (versioned ()) {
+            try (Snapshot s = Snapshot.begin ()) {
+                return asOf (s).size ();
+            } // try
+        } // if
+        return tuples.size ();
+    } // size
     
     /***************************************************************************
      * Get the attribute at the indexed column of the table
@@ -336,6 +1625,12 @@ public class Table
      */
     public void print ()
     {
+        if (versioned ()) {
+            try (Snapshot s = Snapshot.begin ()) {
+                asOf (s).print ();
+                return;
+            } // try
+        } // if
         out.println ("\n Table " + name);
 
         out.print ("|-");
@@ -422,201 +1717,536 @@ public class Table
         return colPos;
     } // match
 
-    /***************************************************************************
-     * Check whether the tuple satisfies the condition.  Use a stack-based postfix
-     * expression evaluation algorithm.evalTup
-     * @param postfix  the postfix expression for the condition
-     * @param tup      the tuple to check
-     * @return whether to keep the tuple
-     * @author Ryan Gell
-     */
-    @SuppressWarnings("unchecked")
-    private boolean evalTup (String [] postfix, Comparable [] tup)
-    {
-        if (postfix == null) return true;
-        Stack <Comparable <?>> s = new Stack <> ();
-	//stack-based postfix evaluation
-        for (String token : postfix) {
-	//if it is a comparison operator, we need to pop two strings
-		if(isComparison(token)){
-			String one = (String)s.pop();
-			String two = (String)s.pop();
-		//if the first string is an attribute
-			if(inAttribute(one)){
-		//we get where the attribute is in the database domain
-				int pos = attributeIndex(one);
-		//we turn the string into a type and grab the attribute from the tup 
-				s.push(compare(tup[pos],token,String2Type.cons(domain[pos],two)));
-			}//if
-		//As above but with second string
-			else if (inAttribute(two)){
-				int pos = attributeIndex(two);
-				s.push(compare(String2Type.cons(domain[pos],one),token,tup[pos]));
-			}//else if
-		//If there was no attribute in the operation string, exit as the
-		//Formula is ill formed
-			else{System.out.println("Select string is ill-formed");System.exit(0);}//else
-			
-		}//if
-		//if we have an 'or' we need to pop two booleans and push them or'd
-		else if(token.equals("|")){
-			if(!(s.peek() instanceof Boolean)){
-				System.out.println("Input to Select ill-formed");
-				System.exit(0);
-			}
-			Boolean	one = (Boolean)s.pop();
-			if(!(s.peek() instanceof Boolean)){
-				System.out.println("Input to Select ill-formed");
-				System.exit(0);
-			}
-			Boolean two = (Boolean)s.pop();	
-			s.push(one||two);
-		}//else if
-		//if we have an 'or' we need to pop two booleans and push them or'd
-		else if(token.equals("&")){
-			Boolean	one = (Boolean)s.pop();
-			Boolean two = (Boolean)s.pop();
-			s.push(one&&two);
-		}//else if
-		//Otherwise we just have a string token, so we push it into the stack
-		else{
-			s.push(token);		
-		}//elses
-        } // for		
-	if(!(s.peek() instanceof Boolean)){
-		System.out.println("Input to Select ill-formed");
-		System.exit(0);
-	}
-	//Return the last Boolean in the stack, e.g. the answer
-        return (Boolean) s.pop ();
-    	} // evalTup
-     /**
-     * Check if the string is an attribute in the database
-     * @param s  the string we want to check
-     * @return if the string is in attribute
-     * @author Ryan Gell
-     */	
-	private boolean inAttribute(String s){
-		for(int i = 0; i < attribute.length; i++){
-			if(attribute[i].toLowerCase().equals(s.toLowerCase()) ) return true;
-		}//for
-		return false;
-	}//inAttribute
-     /**
-     * Find where a given attribute is in the attribute list
-     * @param s  the string we want to find
-     * @return the index of the string or -1 if it's not present
-     * @author Ryan Gell
-     */	
-	private int attributeIndex(String s){
-		if(inAttribute(s)){
-			for(int i = 0; i < attribute.length; i++){
-				if( s.toLowerCase().equals(attribute[i].toLowerCase()) )
-					return i;
-			}//for
-		}//if
-		return -1;
-	}//attributeIndex
-     /**
-     * Returns the value of a certain index of a tup
-     * @param index  the index we want to access
-     * @param tup    the tup we want to access
-     * @return the value at that index
-     * @author Ryan Gell
-     */	
-	private Comparable getValueAt(int index, Comparable [] tup){
-		return tup[index];	
-	}//getValueAt
-     /**
-     * Returns the value of a certain attribute in a tup
-     * @param key  the name of the attribute we want to access
-     * @param tup    the tup we want to access
-     * @return the value at that index
-     * @author Ryan Gell
-     */	
-	private Comparable getValueOf(String key, Comparable[] tup){
-		return getValueAt(attributeIndex(key), tup);	
-	}//getValueOf
     /***************************************************************************
      * Pack tuple tup into a record/byte-buffer (array of bytes).
      * @param tup  the array of attribute values forming the tuple
      * @return  a tuple packed into a record/byte-buffer
-     * 
+     */
     byte [] pack (Comparable [] tup)
     {
-        byte [] record = new byte [tupleSize ()];
-        byte [] b      = null;
-        int     s      = 0;
-        int     i      = 0;
+        ByteBuffer record = ByteBuffer.allocate (tupleSize ());
+        pack (tup, record);
+        return record.array ();
+    } // pack
 
+    /***************************************************************************
+     * Pack tuple tup into the buffer at its current position, advancing it by
+     * tupleSize () bytes.  Values are written directly into the buffer with no
+     * intermediate arrays, in an order-preserving form: integers have their sign
+     * bit flipped, reals are mapped so their bit patterns sort like the numbers
+     * (as Double/Float.compareTo order them), and Strings are written as
+     * STRING_SIZE / 2 big-endian chars padded with zeros.  Hence comparing two
+     * packed values as unsigned bytes agrees with compareTo, and a packed key
+     * may stand in for KeyType.compareTo.  A String longer than STRING_SIZE / 2
+     * chars or ending in '\0' could not be unpacked as it was, so it is refused
+     * (insert and bulkLoad reject such tuples first, see packable).
+     * @param tup  the array of attribute values forming the tuple
+     * @param buf  the buffer to pack into
+     * @throws IllegalArgumentException  if a String does not fit
+     */
+    void pack (Comparable [] tup, ByteBuffer buf)
+    {
         for (int j = 0; j < domain.length; j++) {
-            switch (domain [j].getName ()) {
-            case "java.lang.Integer":
-                b = Conversions.int2ByteArray ((Integer) tup [j]);
-                s = 4;
+            switch (domain [j].getSimpleName ()) {
+            case "Long":      buf.putLong ((Long) tup [j] ^ Long.MIN_VALUE);                    break;
+            case "Integer":   buf.putInt ((Integer) tup [j] ^ Integer.MIN_VALUE);               break;
+            case "Short":     buf.putShort ((short) ((Short) tup [j] ^ Short.MIN_VALUE));       break;
+            case "Byte":      buf.put ((byte) ((Byte) tup [j] ^ Byte.MIN_VALUE));               break;
+            case "Double":
+                long d = Double.doubleToLongBits ((Double) tup [j]);
+                buf.putLong (d ^ (d >> 63 | Long.MIN_VALUE));
                 break;
-            case "java.lang.String":
-                b = ((String) tup [j]).getBytes ();
-                s = 64;
+            case "Float":
+                int f = Float.floatToIntBits ((Float) tup [j]);
+                buf.putInt (f ^ (f >> 31 | Integer.MIN_VALUE));
                 break;
-
-             //-----------------\\ 
-            // TO BE IMPLEMENTED \\
-           //---------------------\\ 
-
+            case "Character": buf.putChar ((Character) tup [j]);                                break;
+            case "String":
+                String str = (String) tup [j];
+                int    n   = str.length ();
+                if (n > STRING_SIZE / 2 || str.endsWith ("\0")) {
+                    throw new IllegalArgumentException ("Table.pack: string does not fit in " + STRING_SIZE / 2
+                                                      + " chars: " + str);
+                } // if
+                for (int k = 0; k < n; k++) buf.putChar (str.charAt (k));
+                for (int k = n; k < STRING_SIZE / 2; k++) buf.putChar ('\0');
+                break;
+            default:
+                throw new IllegalArgumentException ("Table.pack: unsupported domain " + domain [j]);
             } // switch
-            if (b == null) {
-                out.println ("Table.pack: byte array b is null");
-                return null;
-            } // if
-            for (int k = 0; k < s; k++) record [i++] = b [k];
         } // for
-        return record;
     } // pack
-     */
 
     /***************************************************************************
      * Unpack the record/byte-buffer (array of bytes) to reconstruct a tuple.
      * @param record  the byte-buffer in which the tuple is packed
      * @return  an unpacked tuple
-     * 
+     */
     Comparable [] unpack (byte [] record)
     {
-             //-----------------\\ 
-            // TO BE IMPLEMENTED \\
-           //---------------------\\ 
-
-        return null;
+        return unpack (ByteBuffer.wrap (record));
     } // unpack
+
+    /***************************************************************************
+     * Unpack a tuple from the buffer at its current position, advancing it by
+     * tupleSize () bytes (the inverse of pack (tup, buf)).
+     * @param buf  the buffer holding the packed tuple
+     * @return  an unpacked tuple
      */
+    Comparable [] unpack (ByteBuffer buf)
+    {
+        Comparable [] tup = new Comparable [domain.length];
+
+        for (int j = 0; j < domain.length; j++) {
+            switch (domain [j].getSimpleName ()) {
+            case "Long":      tup [j] = buf.getLong () ^ Long.MIN_VALUE;                   break;
+            case "Integer":   tup [j] = buf.getInt () ^ Integer.MIN_VALUE;                 break;
+            case "Short":     tup [j] = (short) (buf.getShort () ^ Short.MIN_VALUE);       break;
+            case "Byte":      tup [j] = (byte) (buf.get () ^ Byte.MIN_VALUE);              break;
+            case "Double":
+                long d = buf.getLong ();
+                tup [j] = Double.longBitsToDouble (d ^ (~d >> 63 | Long.MIN_VALUE));
+                break;
+            case "Float":
+                int f = buf.getInt ();
+                tup [j] = Float.intBitsToFloat (f ^ (~f >> 31 | Integer.MIN_VALUE));
+                break;
+            case "Character": tup [j] = buf.getChar ();                                    break;
+            case "String":
+                char [] chars = CHARS.get ();
+                int     n     = chars.length;
+                for (int k = 0; k < n; k++) chars [k] = buf.getChar ();
+                while (n > 0 && chars [n - 1] == '\0') n--;          // drop the padding
+                tup [j] = new String (chars, 0, n);
+                break;
+            default:
+                throw new IllegalArgumentException ("Table.unpack: unsupported domain " + domain [j]);
+            } // switch
+        } // for
+        return tup;
+    } // unpack
 
     /***************************************************************************
      * Determine the size of tuples in this table in terms of the number of bytes
      * required to store it in a record/byte-buffer.
      * @return  the size of packed-tuples in bytes
-     * 
-    private int tupleSize ()
+     */
+    int tupleSize ()
     {
         int s = 0;
 
         for (int j = 0; j < domain.length; j++) {
-            switch (domain [j].getName ()) {
-            case "java.lang.Integer": s += 4;  break;
-            case "java.lang.String":  s += 64; break;
+            switch (domain [j].getSimpleName ()) {
+            case "Long":      s += 8;           break;
+            case "Integer":   s += 4;           break;
+            case "Short":     s += 2;           break;
+            case "Byte":      s += 1;           break;
+            case "Double":    s += 8;           break;
+            case "Float":     s += 4;           break;
+            case "Character": s += 2;           break;
+            case "String":    s += STRING_SIZE; break;
+            default:
+                out.println ("Table.tupleSize: unsupported domain " + domain [j]);
+            } // switch
+        } // for
+
+        return s;
+    } // tupleSize
+
+    /***************************************************************************
+     * Save the table to a snapshot file: a header giving the schema (name,
+     * attributes, domains and key), the number of tuples, whether they are in
+     * key order and the LSN of the last logged insert they include, followed
+     * by the tuples in blocks of SNAP_BLOCK bytes written through a FileChannel.
+     * Values are written in binary (Strings as their length and chars, so
+     * nothing is truncated).  A table with an ordered primary index is written
+     * in key order so that load can bulk-build its index.  Secondary indexes
+     * are not saved (see createIndex).  If a write-ahead log is open, the
+     * snapshot is its checkpoint: the log is truncated to the inserts after the
+     * snapshot's LSN, which are those openLog replays into the loaded table.
+     * #usage movie.save ("movie.snap")
+     * @param path  the snapshot file (replaced if it exists)
+     * @return  whether the table was saved
+     */
+    public boolean save (String path)
+    {
+        out.println ("DDL> save " + name + " to " + path);
+
+        WriteAheadLog log  = wal;
+        Lock          lock = log == null ? null : logLock.writeLock ();
+        Snapshot      s    = null;
+        long          lsn;
+        boolean       ok;
+        if (lock != null) lock.lock ();                      // no insert is between logging and applying
+        try {
+            lsn = log == null ? logged : log.position ();
+            if (versioned ()) {                               // the snapshot holds still: let inserts go on
+                s = Snapshot.begin ();
+                if (lock != null) lock.unlock ();
+                lock = null;
+            } // if
+            ok = (s == null ? this : asOf (s)).writeSnapshot (path, lsn);
+        } finally {
+            if (lock != null) lock.unlock ();
+            if (s != null) s.close ();
+        } // try
+
+        if (ok && log != null) {
+            try {
+                log.truncate (lsn);
+            } catch (IllegalStateException | UncheckedIOException ex) {
+                out.println ("save: error - " + ex.getMessage ());
+            } // try
+        } // if
+        return ok;
+    } // save
+
+    /***************************************************************************
+     * Write the tuples of the table to a snapshot file (see save).  A table
+     * that takes inserts while it is written (a concurrent index that is not a
+     * snapshot view) writes the prefix of its tuples published when it starts,
+     * not the live index, whose size and walk disagree while keys are added.
+     * The tuple count in the header is then patched to the number written.
+     * @param path  the snapshot file (replaced if it exists)
+     * @param lsn   the LSN of the last logged insert the tuples include
+     * @return  whether the table was written
+     */
+    private boolean writeSnapshot (String path, long lsn)
+    {
+        boolean                    live   = index instanceof ConcurrentMap && ! (tuples instanceof VersionList.View);
+        boolean                    sorted = ! live && indexed () && index instanceof SortedMap;
+        Collection <Comparable []> rows   = sorted ? index.values () : live ? tuples.subList (0, tuples.size ())
+                                                                         : tuples;
+        try (FileChannel ch = FileChannel.open (new File (path).toPath (), StandardOpenOption.CREATE,
+                                                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+            DataOutputStream      head  = new DataOutputStream (bytes);
+            head.writeUTF (name);
+            head.writeInt (attribute.length);
+            for (String a : attribute) head.writeUTF (a);
+            for (Class d : domain) head.writeUTF (d.getSimpleName ());
+            head.writeInt (key.length);
+            for (String k : key) head.writeUTF (k);
+            head.writeBoolean (sorted);
+            head.writeInt (rows.size ());
+            head.writeLong (lsn);
+
+            ByteBuffer buf = ByteBuffer.allocateDirect (SNAP_BLOCK);
+            buf.putInt (SNAP_MAGIC).putInt (SNAP_VERSION).putInt (bytes.size ()).put (bytes.toByteArray ());
+            int n = 0;
+            for (Comparable [] tup : rows) {
+                n++;
+                while (true) {
+                    int start = buf.position ();
+                    try {
+                        writeTuple (tup, buf);
+                        break;
+                    } catch (BufferOverflowException ex) {      // block full: write it and retry
+                        buf.position (start);
+                        if (start == 0) buf = ByteBuffer.allocateDirect (buf.capacity () << 1);
+                        else drain (ch, buf);
+                    } // try
+                } // while
+            } // for
+            drain (ch, buf);
+            ch.write (ByteBuffer.allocate (4).putInt (0, n), bytes.size ());   // the count: 12 bytes from the end
+            ch.force (true);                                                   // of the 12 + size byte header
+            return true;
+        } catch (IOException ex) {
+            out.println ("save: error - " + ex);
+            return false;
+        } // try
+    } // writeSnapshot
 
-              //-----------------\\ 
-             // TO BE IMPLEMENTED \\
-            //---------------------\\ 
+    /***************************************************************************
+     * Load a table from a snapshot file written by save, keeping the tuples in
+     * memory and indexing them with a TreeMap.
+     * #usage Table movie = Table.load ("movie.snap")
+     * @param path  the snapshot file
+     * @return  the loaded table, or null if the file could not be read
+     */
+    public static Table load (String path)
+    {
+        return load (path, MapType.TREE_MAP, StorageType.ARRAY_LIST);
+    } // load
 
+    /***************************************************************************
+     * Load a table from a snapshot file written by save.  The file is read
+     * sequentially in blocks of SNAP_BLOCK bytes, and when the tuples were saved
+     * in key order the primary index is built bottom-up from them in one pass
+     * (see buildIndex) rather than by one insertion per tuple.  The table keeps
+     * the snapshot's LSN, so openLog replays only the inserts logged after it.
+     * @param path   the snapshot file
+     * @param mType  the map implementation used for the primary index
+     * @param sType  where the tuples are stored (in memory or on disk)
+     * @return  the loaded table, or null if the file could not be read
+     */
+    public static Table load (String path, MapType mType, StorageType sType)
+    {
+        out.println ("DDL> load " + path);
+
+        try (FileChannel ch = FileChannel.open (new File (path).toPath (), StandardOpenOption.READ)) {
+            long       size = ch.size ();
+            ByteBuffer buf  = ByteBuffer.allocateDirect (SNAP_BLOCK);
+            fill (ch, buf);
+            if (buf.remaining () < 12 || buf.getInt () != SNAP_MAGIC) throw new IOException ("not a snapshot");
+            int version = buf.getInt ();
+            if (version < 1 || version > SNAP_VERSION) throw new IOException ("unsupported snapshot version " + version);
+            byte [] bytes = new byte [count (buf.getInt (), buf.remaining (), "header bytes")];
+            buf.get (bytes);
+
+            DataInputStream head = new DataInputStream (new ByteArrayInputStream (bytes));
+            String    tabName = head.readUTF ();
+            String [] attr    = new String [count (head.readInt (), bytes.length / 4, "attributes")];
+            String [] dom     = new String [attr.length];
+            for (int j = 0; j < attr.length; j++) attr [j] = head.readUTF ();
+            for (int j = 0; j < dom.length; j++) dom [j] = head.readUTF ();
+            String [] tabKey  = new String [count (head.readInt (), attr.length, "key attributes")];
+            for (int j = 0; j < tabKey.length; j++) tabKey [j] = head.readUTF ();
+            boolean   sorted  = head.readBoolean ();
+            int       n       = count (head.readInt (), size, "tuples");
+            long      lsn     = version >= 2 ? head.readLong () : 0;
+            Class []  domains = findClass (dom);
+            if (Arrays.asList (domains).contains (null)) throw new IOException ("unknown domain in " + Arrays.toString (dom));
+            if (! Arrays.asList (attr).containsAll (Arrays.asList (tabKey))) {
+                throw new IOException ("key " + Arrays.toString (tabKey) + " is not among the attributes");
             } // if
+
+            Table  tab    = new Table (tabName, attr, domains, tabKey, mType, sType);
+            tab.logged    = lsn;
+            int [] keyPos = tab.match (tabKey);
+            List <Map.Entry <KeyType, Comparable []>> run = new ArrayList <> ();
+            for (int i = 0; i < n; i++) {
+                Comparable [] tup;
+                while (true) {
+                    int start = buf.position ();
+                    try {
+                        tup = tab.readTuple (buf, size / 2);
+                        break;
+                    } catch (BufferUnderflowException ex) {     // tuple continues in the next block
+                        buf.position (start);
+                        if (start == 0 && buf.limit () == buf.capacity ()) {
+                            buf = ByteBuffer.allocateDirect (buf.capacity () << 1).put (buf);
+                            buf.flip ();
+                        } // if
+                        buf.compact ();
+                        int before = buf.position ();
+                        fill (ch, buf);
+                        if (buf.limit () == before) throw new EOFException ("snapshot ends after " + i + " tuples");
+                    } // try
+                } // while
+
+                if (tab.versioned ()) {                       // each tuple is a new version
+                    tab.apply (tup);
+                    continue;
+                } // if
+                tab.tuples.add (tup);
+                Comparable [] keyVal = new Comparable [keyPos.length];
+                for (int j = 0; j < keyPos.length; j++) keyVal [j] = tup [keyPos [j]];
+                if (sorted) run.add (new AbstractMap.SimpleImmutableEntry <> (new KeyType (keyVal), tup));
+                else if (tab.indexPut (new KeyType (keyVal), tup, i)) tab.shadowed = true;
+            } // for
+            if (sorted) tab.buildIndex (run, 0);
+            return tab;
+        } catch (IOException | IllegalArgumentException ex) {
+            out.println ("load: error - " + path + ": " + ex.getMessage ());
+            return null;
+        } // try
+    } // load
+
+    /***************************************************************************
+     * Check a count read from a snapshot file against what the file can hold,
+     * so a corrupt file is reported rather than sizing an array by it.
+     * @param n     the count
+     * @param max   the largest count the file can hold
+     * @param what  what is counted
+     * @return  the count
+     * @throws IOException  if the count is negative or too large
+     */
+    private static int count (int n, long max, String what) throws IOException
+    {
+        if (n < 0 || n > max) throw new IOException ("corrupt snapshot: " + n + " " + what);
+        return n;
+    } // count
+
+    /***************************************************************************
+     * Write a tuple to a snapshot block.  Numbers and chars are written in
+     * binary and Strings as their length followed by their chars.
+     * @param tup  the tuple to write
+     * @param buf  the block to write into
+     * @throws BufferOverflowException  if the tuple does not fit in the block
+     */
+    private void writeTuple (Comparable [] tup, ByteBuffer buf)
+    {
+        for (int j = 0; j < domain.length; j++) {
+            switch (domain [j].getSimpleName ()) {
+            case "Long":      buf.putLong ((Long) tup [j]);        break;
+            case "Integer":   buf.putInt ((Integer) tup [j]);      break;
+            case "Short":     buf.putShort ((Short) tup [j]);      break;
+            case "Byte":      buf.put ((Byte) tup [j]);            break;
+            case "Double":    buf.putDouble ((Double) tup [j]);    break;
+            case "Float":     buf.putFloat ((Float) tup [j]);      break;
+            case "Character": buf.putChar ((Character) tup [j]);   break;
+            case "String":
+                String str = (String) tup [j];
+                buf.putInt (str.length ());
+                for (int k = 0; k < str.length (); k++) buf.putChar (str.charAt (k));
+                break;
+            default:
+                throw new IllegalArgumentException ("Table.save: unsupported domain " + domain [j]);
+            } // switch
         } // for
+    } // writeTuple
 
-        return s;
-    } // tupleSize
+    /***************************************************************************
+     * Read a tuple written by writeTuple from a snapshot block.
+     * @param buf     the block to read from
+     * @param maxLen  the most chars a String may have (bounded by the file size)
+     * @return  the tuple
+     * @throws BufferUnderflowException  if the tuple continues past the block
+     * @throws IllegalArgumentException  if a String length is out of range
+     */
+    private Comparable [] readTuple (ByteBuffer buf, long maxLen)
+    {
+        Comparable [] tup = new Comparable [domain.length];
+        for (int j = 0; j < domain.length; j++) {
+            switch (domain [j].getSimpleName ()) {
+            case "Long":      tup [j] = buf.getLong ();            break;
+            case "Integer":   tup [j] = buf.getInt ();             break;
+            case "Short":     tup [j] = buf.getShort ();           break;
+            case "Byte":      tup [j] = buf.get ();                break;
+            case "Double":    tup [j] = buf.getDouble ();          break;
+            case "Float":     tup [j] = buf.getFloat ();           break;
+            case "Character": tup [j] = buf.getChar ();            break;
+            case "String":
+                int len = buf.getInt ();
+                if (len < 0 || len > maxLen) throw new IllegalArgumentException ("corrupt snapshot: String of length " + len);
+                if (len > buf.remaining () / 2) throw new BufferUnderflowException ();
+                char [] chars = new char [len];
+                buf.asCharBuffer ().get (chars);
+                buf.position (buf.position () + 2 * len);
+                tup [j] = new String (chars);
+                break;
+            default:
+                throw new IllegalArgumentException ("Table.load: unsupported domain " + domain [j]);
+            } // switch
+        } // for
+        return tup;
+    } // readTuple
+
+    /***************************************************************************
+     * Write the contents of a block to the channel and clear it.
+     * @param ch   the channel to write to
+     * @param buf  the block, filled up to its position
+     */
+    private static void drain (FileChannel ch, ByteBuffer buf) throws IOException
+    {
+        buf.flip ();
+        while (buf.hasRemaining ()) ch.write (buf);
+        buf.clear ();
+    } // drain
+
+    /***************************************************************************
+     * Read from the channel into a block until it is full or the channel ends,
+     * leaving the block ready to be read from its start.
+     * @param ch   the channel to read from
+     * @param buf  the block, holding unread bytes up to its position
      */
+    private static void fill (FileChannel ch, ByteBuffer buf) throws IOException
+    {
+        while (buf.hasRemaining () && ch.read (buf) >= 0) ;
+        buf.flip ();
+    } // fill
 
     //------------------------ Static Utility Methods --------------------------
 
+    /***************************************************************************
+     * Determine whether a scan of the tuples should run in parallel: they must
+     * be in memory (an ArrayList or AppendList) and number at least
+     * PARALLEL_THRESHOLD.
+     * @param tups  the tuples to scan
+     * @return  whether to use parallelScan
+     */
+    private static boolean parallel (List <Comparable []> tups)
+    {
+        return (tups instanceof ArrayList || tups instanceof AppendList) && tups.size () >= PARALLEL_THRESHOLD;
+    } // parallel
+
+    /***************************************************************************
+     * Apply a function to every tuple in parallel, on the common ForkJoinPool, a
+     * chunk of PARALLEL_CHUNK tuples per task, and add the non-null results to
+     * dest in the order of the tuples they came from.
+     * @param tups  the tuples to scan (a random access list)
+     * @param f     the function, returning the tuple to keep or null to drop it
+     * @param dest  the list receiving the results
+     */
+    @SuppressWarnings("unchecked")
+    private static void parallelScan (List <Comparable []> tups, Function <Comparable [], Comparable []> f,
+                                      List <Comparable []> dest)
+    {
+        int                     n     = tups.size ();
+        List <Comparable []> [] chunk = new List [(n + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK];
+        IntStream.range (0, chunk.length).parallel ().forEach (c -> {
+            int                  hi  = Math.min (n, (c + 1) * PARALLEL_CHUNK);
+            List <Comparable []> part = new ArrayList <> ();
+            for (int i = c * PARALLEL_CHUNK; i < hi; i++) {
+                Comparable [] tup = f.apply (tups.get (i));
+                if (tup != null) part.add (tup);
+            } // for
+            chunk [c] = part;
+        });
+
+        int total = 0;
+        for (List <Comparable []> c : chunk) total += c.size ();
+        if (dest instanceof ArrayList) ((ArrayList <Comparable []>) dest).ensureCapacity (dest.size () + total);
+        for (List <Comparable []> c : chunk) dest.addAll (c);
+    } // parallelScan
+
+    /***************************************************************************
+     * Return a parser converting strings to values of the given domain.
+     * @param dom  the domain (e.g., Integer.class)
+     * @return  the parser, which throws IllegalArgumentException on bad input
+     */
+    private static Function <String, Comparable> parser (Class dom)
+    {
+        switch (dom.getSimpleName ()) {
+        case "Long":      return Long::valueOf;
+        case "Integer":   return Integer::valueOf;
+        case "Short":     return Short::valueOf;
+        case "Byte":      return Byte::valueOf;
+        case "Double":    return Double::valueOf;
+        case "Float":     return Float::valueOf;
+        case "String":    return s -> s;
+        case "Character":
+            return s -> {
+                if (s.length () != 1) throw new IllegalArgumentException ("not a single char: " + s);
+                return s.charAt (0);
+            };
+        default:
+            return s -> {
+                Comparable v = Condition.convert (dom, s);
+                if (v == null) throw new IllegalArgumentException ("cannot convert " + s + " to " + dom);
+                return v;
+            };
+        } // switch
+    } // parser
+
+    /***************************************************************************
+     * Make a map of the given type to serve as a primary index.
+     * @param mType  the map implementation to use
+     * @return  an empty map from keys to tuples (or positions, see RowIndex)
+     */
+    private static <V> Map <KeyType, V> makeMap (MapType mType)
+    {
+        switch (mType) {
+        case BPTREE_MAP:   return new BPTreeMap <> ();
+        case LINHASH_MAP:  return new LinHash <> ();
+        case EXTHASH_MAP:  return new ExtHash <> ();
+        case SKIPLIST_MAP: return new ConcurrentSkipListMap <> ();
+        default:           return new TreeMap <> ();
+        } // switch
+    } // makeMap
+
     /***************************************************************************
      * Check the size of the tuple (number of elements in list) as well as the
      * type of each value to ensure it is from the right domain. 
@@ -633,7 +2263,7 @@ public class Table
     	}
     	int length = tup.length;
     	for(int i=0; i< length; i++){
-    		if(tup[i].getClass().getName()!=dom[i].getName()){
+    		if(tup[i] == null || tup[i].getClass() != dom[i]){
     			return false;
     		}
     	}
@@ -653,27 +2283,6 @@ public class Table
                op.equals (">")  || op.equals (">=");
     } // isComparison
 
-    /***************************************************************************
-     * Compare values x and y according to the comparison operator.
-     * @param   x   the first operand
-     * @param   op  the comparison operator
-     * @param   y   the second operand
-     * @return  whether the comparison evaluates to true or false
-     */
-    @SuppressWarnings("unchecked")
-    private static boolean compare (Comparable x, String op , Comparable y)
-    {
-        switch (op) {
-        case "==": return x.compareTo (y) == 0;
-        case "!=": return x.compareTo (y) != 0;
-        case "<":  return x.compareTo (y) <  0;
-        case "<=": return x.compareTo (y) <= 0;
-        case ">":  return x.compareTo (y) >  0;
-        case ">=": return x.compareTo (y) >= 0;
-        default: { out.println ("compare: error - unexpected op"); return false; }
-        } // switch
-    } // compare
-
     /***************************************************************************
      * Convert an untokenized infix expression to a tokenized postfix expression.
      * This implementation does not handle parentheses ( ).
@@ -807,17 +2416,590 @@ public class Table
         return tup;
     } // extractTup
 
-    private static boolean isEqual(Comparable[] table1, Comparable[] table2){
-    	int size = table1.length;
-    	int i=0;
-    	while(i<size && table1[i].compareTo(table2[i])==0){
-    		i++;
-    	}
-    	if(i==size){
-    		return true;
-    	}
-    	return false;
-    }
+    /***************************************************************************
+     * Return the comparison operator obtained by swapping its operands.
+     * @param op  the comparison operator
+     * @return  the mirrored operator (e.g., "<" becomes ">")
+     */
+    private static String flip (String op)
+    {
+        switch (op) {
+        case "<":  return ">";
+        case "<=": return ">=";
+        case ">":  return "<";
+        case ">=": return "<=";
+        default:   return op;
+        } // switch
+    } // flip
+
+    /***************************************************************************
+     * Compare two tuples lexicographically on the given column positions.
+     * @param a   the first tuple
+     * @param ca  the column positions in a
+     * @param b   the second tuple
+     * @param cb  the corresponding column positions in b
+     * @return  negative, zero or positive as a is less than, equal to or greater than b
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareOn (Comparable [] a, int [] ca, Comparable [] b, int [] cb)
+    {
+        for (int i = 0; i < ca.length; i++) {
+            int c = a [ca [i]].compareTo (b [cb [i]]);
+            if (c != 0) return c;
+        } // for
+        return 0;
+    } // compareOn
+
+    /***************************************************************************
+     * Widen a value so that it compares with the bounds of a band join: integer
+     * types become Long and real types Double; other values are unchanged.
+     * @param v  the value
+     * @return  the widened value
+     */
+    private static Comparable widen (Comparable v)
+    {
+        if (v instanceof Double || v instanceof Float) return ((Number) v).doubleValue ();
+        if (v instanceof Number) return ((Number) v).longValue ();
+        return v;
+    } // widen
+
+    /***************************************************************************
+     * Add a constant to a numeric value, widening both (see widen).  A Long
+     * sum that overflows saturates.
+     * @param v    the value
+     * @param off  the constant
+     * @return  the widened sum
+     */
+    private static Comparable plus (Comparable v, Comparable off)
+    {
+        if (v instanceof Double || v instanceof Float) {
+            return ((Number) v).doubleValue () + ((Number) off).doubleValue ();
+        } // if
+        long k = ((Number) off).longValue ();
+        try {
+            return Math.addExact (((Number) v).longValue (), k);
+        } catch (ArithmeticException ex) {
+            return k < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        } // try
+    } // plus
+
+    /***************************************************************************
+     * Concatenate two arrays (e.g., the tuples or domains of joined tables).
+     * @param a  the first array
+     * @param b  the second array
+     * @return  the elements of a followed by the elements of b
+     */
+    private static <T> T [] concat (T [] a, T [] b)
+    {
+        T [] c = Arrays.copyOf (a, a.length + b.length);
+        System.arraycopy (b, 0, c, a.length, b.length);
+        return c;
+    } // concat
+
+    /***************************************************************************
+     * Return the position of the given name in the array, or -1 if absent.
+     * @param names  the array of names to search
+     * @param name   the name to find
+     * @return  the position of name in names
+     */
+    private static int indexOf (String [] names, String name)
+    {
+        for (int j = 0; j < names.length; j++) {
+            if (names [j].equals (name)) return j;
+        } // for
+        return -1;
+    } // indexOf
+
+    /***************************************************************************
+     * Remove the given qualifier prefix (e.g., "s.") from an attribute name.
+     * @param attr  the possibly qualified attribute name
+     * @param qual  the qualifier prefix
+     * @return  the unqualified attribute name
+     */
+    private static String strip (String attr, String qual)
+    {
+        return attr.startsWith (qual) ? attr.substring (qual.length ()) : attr;
+    } // strip
+
+    /***************************************************************************
+     * Collect the contents of the given tuples into a hash set.  Wrapping a whole
+     * tuple in a KeyType gives hashing and equality that agree with compareTo
+     * on every attribute.
+     * @param tups  the tuples to collect
+     * @return  the set of tuple contents
+     */
+    private static Set <KeyType> contents (List <Comparable []> tups)
+    {
+        Set <KeyType> set = new HashSet <> (Math.max (16, (int) (tups.size () / .75f) + 1));
+        for (Comparable [] tup : tups) set.add (new KeyType (tup));
+        return set;
+    } // contents
+
+    /***************************************************************************
+     * The main method is used for testing purposes only.  Each fast path of the
+     * operators is run on generated MovieDB data and checked against the plain
+     * nested-loop join or full scan computing the same result.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        PrintStream stdout = System.out;
+        System.setOut (new PrintStream (OutputStream.nullOutputStream ()));   // quiet the operators
+
+        MovieGen gen    = new MovieGen (1, 1.0);
+        Table    movie  = new Table ("movie", "title year length genre studioName producerNo",
+                                     "String Integer Integer String String Integer", "title year");
+        Table    studio = new Table ("studio", "name address presNo", "String String Integer", "name");
+        for (Comparable [] tup : gen.movies (0, 2000, 60, 100)) movie.insert (tup);
+        for (Comparable [] tup : gen.studios (50, 100)) studio.insert (tup);
+
+        JoinCond eq   = movie.joinCond ("studioName == name", studio);
+        Table    slow = movie.nestedLoop (studio, (m, s) -> m [4].equals (s [0]));
+        Table    fast = movie.joinTable (studio);
+        movie.hashJoin (eq.cols1, studio, eq.cols2, fast);
+        check (stdout, "hash join", fast, slow);
+
+        fast = movie.joinTable (studio);
+        movie.indexJoin (studio.alignToKey (eq.cols2, eq.cols1), studio, fast);
+        check (stdout, "index join", fast, slow);
+
+        fast = movie.joinTable (studio);
+        movie.mergeJoin (eq, studio, fast);
+        check (stdout, "merge join", fast, slow);
+
+        check (stdout, "inequality join", movie.join ("producerNo < presNo", studio),
+               movie.nestedLoop (studio, (m, s) -> (Integer) m [5] < (Integer) s [2]));
+        check (stdout, "band join", movie.join ("producerNo - 3 <= presNo < producerNo + 3", studio),
+               movie.nestedLoop (studio, (m, s) -> (Integer) m [5] - 3 <= (Integer) s [2]
+                                                && (Integer) s [2] < (Integer) m [5] + 3));
+        check (stdout, "band join, largest first", movie.join ("producerNo + 2 > s.presNo >= producerNo", studio),
+               movie.nestedLoop (studio, (m, s) -> (Integer) m [5] <= (Integer) s [2]
+                                                && (Integer) s [2] < (Integer) m [5] + 2));
+
+        Table cinema = new Table ("cinema", "title year length genre studioName producerNo",
+                                  "String Integer Integer String String Integer", "title year");
+        MovieGen gen2   = new MovieGen (2, 1.0);
+        for (Comparable [] tup : gen2.movies (1500, 300, 60, 100)) cinema.insert (tup);
+        for (Comparable [] tup : movie.tuples.subList (1800, 2000)) cinema.insert (tup);
+        for (Comparable [] tup : gen2.movies (2000, 300, 60, 100)) cinema.insert (tup);
+
+        slow = new Table (movie, "_union");               // same keys may hold different contents
+        slow.tuples.addAll (movie.tuples);
+        for (Comparable [] c : cinema.tuples) {
+            boolean dup = false;
+            for (Comparable [] m : movie.tuples) dup |= Arrays.equals (m, c);
+            if (! dup) slow.tuples.add (c);
+        } // for
+        check (stdout, "union", movie.union (cinema), slow);
+
+        slow = new Table (movie, "_minus");
+        for (Comparable [] m : movie.tuples) {
+            boolean found = false;
+            for (Comparable [] c : cinema.tuples) found |= Arrays.equals (m, c);
+            if (! found) slow.tuples.add (m);
+        } // for
+        check (stdout, "minus by key", movie.minus (cinema), slow);
+        check (stdout, "minus by contents", movie.minus (cinema.project ("title year length genre studioName producerNo")),
+               slow);
+
+        check (stdout, "select comparing columns of different domains", movie.select ("year == title"),
+               new Table (movie, "_none"));
+        check (stdout, "select on a misspelled attribute", movie.select ("yaer > 1900"),
+               new Table (movie, "_none"));
+        check (stdout, "select comparing two literals", movie.select ("titel == Rocky"),
+               new Table (movie, "_none"));
+
+        for (String c : new String [] { "title == Movie00000042 & year == 1942", "year == 1942 & title == Movie00000043",
+                                        "title >= Movie00000100 & title < Movie00000200", "title > Movie00001990" }) {
+            check (stdout, "select " + c, movie.select (c), movie.scan (c));
+        } // for
+
+        Table sequel = movie.project ("title year length genre studioName producerNo");  // unindexed
+        sequel.createIndex ("genre", IndexKind.HASH);
+        sequel.createIndex ("producerNo", IndexKind.ORDERED);
+        sequel.createIndex ("studioName", IndexKind.HASH);
+        for (String c : new String [] { "genre == comedy", "producerNo >= 10 & producerNo < 20 & genre != drama" }) {
+            check (stdout, "secondary index select " + c, sequel.select (c), sequel.scan (c));
+        } // for
+        check (stdout, "secondary index join", studio.join ("name == studioName", sequel),
+               studio.nestedLoop (sequel, (s, m) -> s [0].equals (m [4])));
+
+        Table disk = new Table ("disk", "title year length genre studioName producerNo",   // index holds record numbers
+                                "String Integer Integer String String Integer", "title year",
+                                MapType.TREE_MAP, StorageType.FILE_LIST);
+        disk.bulkLoad (movie.index.values ().iterator ());
+        disk.bulkLoad (cinema.tuples.subList (500, 800).iterator ());
+        for (String c : new String [] { "title == Movie00000042 & year == 1942",
+                                        "title >= Movie00000100 & title < Movie00000200" }) {
+            check (stdout, "FILE_LIST select " + c, disk.select (c), disk.scan (c));
+        } // for
+        check (stdout, "FILE_LIST index join", movie.join ("title year == title year", disk),
+               movie.nestedLoop (disk, (m, d) -> m [0].equals (d [0]) && m [1].equals (d [1])));
+        disk.close ();
+
+        Table   narrow = new Table ("narrow", "id name", "Integer String", "id",
+                                    MapType.TREE_MAP, StorageType.FILE_LIST);
+        String  full   = "x".repeat (STRING_SIZE / 2);
+        List <Comparable []> wide = Collections.singletonList (new Comparable [] { 3, full + "x" });
+        boolean fits   = narrow.insert (new Comparable [] { 1, full })
+                      && ! narrow.insert (new Comparable [] { 2, full + "x" }) && narrow.bulkLoad (wide.iterator ()) == 0;
+        stdout.println ("FILE_LIST refuses Strings that do not fit: "
+                        + (fits && narrow.size () == 1 && narrow.tuples.get (0) [1].equals (full) ? "ok" : "FAILED"));
+        narrow.close ();
+
+        Table columns = new Table ("columns", "title year length genre studioName producerNo",   // index holds row numbers
+                                   "String Integer Integer String String Integer", "title year",
+                                   MapType.BPTREE_MAP, StorageType.COLUMN_LIST);
+        for (Comparable [] tup : movie.tuples) columns.insert (tup);
+        for (String c : new String [] { "title == Movie00000042 & year == 1942",
+                                        "title >= Movie00000100 & title < Movie00000200" }) {
+            check (stdout, "COLUMN_LIST select " + c, columns.select (c), columns.scan (c));
+        } // for
+        check (stdout, "COLUMN_LIST index join", cinema.join ("title year == title year", columns),
+               cinema.nestedLoop (columns, (c, m) -> c [0].equals (m [0]) && c [1].equals (m [1])));
+
+        try {
+            File snap = File.createTempFile ("movie_", ".snap");         // saved in key order, index built bottom-up
+            snap.deleteOnExit ();
+            movie.save (snap.getPath ());
+            for (MapType mt : new MapType [] { MapType.TREE_MAP, MapType.BPTREE_MAP, MapType.LINHASH_MAP }) {
+                for (StorageType st : new StorageType [] { StorageType.ARRAY_LIST, StorageType.COLUMN_LIST }) {
+                    Table  loaded = load (snap.getPath (), mt, st);
+                    String what   = "load into " + mt + " " + st;
+                    check (stdout, what, loaded, movie);
+                    for (String c : new String [] { "title == Movie00000042 & year == 1942",
+                                                    "title >= Movie00000100 & title < Movie00000200" }) {
+                        check (stdout, what + " select " + c, loaded.select (c), movie.scan (c));
+                    } // for
+                } // for
+            } // for
+            sequel.save (snap.getPath ());                                 // unindexed, saved as stored
+            check (stdout, "load unindexed", load (snap.getPath ()), sequel);
+
+            Table small = new Table ("small", "name id", "String Integer", "id");
+            small.insert (new Comparable [] { "a", 1 });
+            small.save (snap.getPath ());
+            try (RandomAccessFile raf = new RandomAccessFile (snap, "rw")) {   // make the first String's length negative
+                raf.seek (8);
+                raf.seek (12 + raf.readInt ());
+                raf.writeInt (-5);
+            } // try
+            stdout.println ("load refuses a negative String length: " + (load (snap.getPath ()) == null ? "ok" : "FAILED"));
+            try (RandomAccessFile raf = new RandomAccessFile (snap, "rw")) {   // make the header size absurd
+                raf.seek (8);
+                raf.writeInt (Integer.MAX_VALUE);
+            } // try
+            stdout.println ("load refuses an absurd header size: " + (load (snap.getPath ()) == null ? "ok" : "FAILED"));
+        } catch (IOException ex) {
+            stdout.println ("save/load: FAILED - " + ex);
+        } // try
+
+        List <Comparable []> shuffled = new ArrayList <> (movie.tuples);
+        Collections.shuffle (shuffled, new Random (7));
+        for (MapType mt : new MapType [] { MapType.TREE_MAP, MapType.BPTREE_MAP, MapType.SKIPLIST_MAP }) {
+            for (Collection <Comparable []> rows : List.of (movie.index.values (), shuffled)) {
+                Table  bulk = new Table ("bulk", "title year length genre studioName producerNo",
+                                         "String Integer Integer String String Integer", "title year", mt,
+                                         mt == MapType.SKIPLIST_MAP ? StorageType.APPEND_LIST : StorageType.ARRAY_LIST);
+                String what = "bulkLoad " + (rows == shuffled ? "shuffled " : "sorted ") + "into " + mt;
+                bulk.bulkLoad (rows.iterator ());
+                check (stdout, what, bulk, movie);
+                for (String c : new String [] { "title == Movie00000042 & year == 1942",
+                                                "title >= Movie00000100 & title < Movie00000200" }) {
+                    check (stdout, what + " select " + c, bulk.select (c), movie.scan (c));
+                } // for
+            } // for
+        } // for
+
+        Table shared = new Table ("shared", "title year length genre studioName producerNo",  // selects during a load
+                                  "String Integer Integer String String Integer", "title year",
+                                  MapType.SKIPLIST_MAP, StorageType.APPEND_LIST);
+        int [] keyPos = shared.match (shared.key), missed = new int [1];
+        Thread loader = new Thread (() -> {
+            for (int i = 0; i < 20; i++) shared.bulkLoad (gen.movies (10000 * (i + 1), 5000, 60, 100).iterator ());
+        });
+        loader.start ();
+        while (loader.isAlive ()) {
+            for (Comparable [] tup : shared.tuples) {
+                Comparable [] keyVal = new Comparable [keyPos.length];
+                for (int j = 0; j < keyPos.length; j++) keyVal [j] = tup [keyPos [j]];
+                if (! shared.index.containsKey (new KeyType (keyVal))) missed [0]++;
+            } // for
+        } // while
+        stdout.println ("bulkLoad indexes tuples before publishing them: " + (missed [0] == 0 ? "ok" : "FAILED")
+                        + " (" + shared.size () + " tuples)");
+
+        try {
+            File snap = File.createTempFile ("shared_", ".snap");          // save while inserts go on
+            snap.deleteOnExit ();
+            List <Comparable []> before = new ArrayList <> (shared.tuples);
+            Thread inserter = new Thread (() -> {                          // new keys among the saved ones
+                for (Comparable [] tup : before) {
+                    Comparable [] later = tup.clone ();
+                    later [1] = (Integer) tup [1] + 1000;
+                    shared.insert (later);
+                } // for
+            });
+            inserter.start ();
+            shared.save (snap.getPath ());
+            inserter.join ();
+            Table loaded = load (snap.getPath ());
+            int   lost   = loaded == null ? before.size () : 0;
+            for (Comparable [] tup : loaded == null ? List.<Comparable []> of () : before) {
+                Comparable [] keyVal = new Comparable [keyPos.length];
+                for (int j = 0; j < keyPos.length; j++) keyVal [j] = tup [keyPos [j]];
+                if (! loaded.index.containsKey (new KeyType (keyVal))) lost++;
+            } // for
+            stdout.println ("save during inserts keeps the tuples already there: " + (lost == 0 ? "ok" : "FAILED")
+                            + " (" + before.size () + " tuples)");
+        } catch (IOException | InterruptedException ex) {
+            stdout.println ("save during inserts: FAILED - " + ex);
+        } // try
+
+        try {
+            File csv = File.createTempFile ("studio_", ".csv");
+            csv.deleteOnExit ();
+            try (PrintWriter pw = new PrintWriter (csv)) {
+                pw.println ("name,address,presNo");
+                pw.println ("Fox, 10201 Pico Blvd ,1");
+                pw.println ("\"Paramount, Inc.\",\"5555 Melrose Ave, LA\",2");
+                pw.println ("\"The \"\"Big\"\" Studio\", \"1 Main St\" , 3");
+                pw.println ("\"Two Line Studio\",\"Suite 4");
+                pw.println ("2 Elm St\",4");
+                pw.println ("Bad Studio,\"1 Elm\" St,5");
+                pw.println ("Short Studio,6");
+            } // try
+            Table loaded   = new Table ("studio", "name address presNo", "String String Integer", "name");
+            Table expected = new Table ("studio", "name address presNo", "String String Integer", "name");
+            loaded.loadCSV (csv.getPath ());
+            expected.tuples.add (new Comparable [] { "Fox", "10201 Pico Blvd", 1 });
+            expected.tuples.add (new Comparable [] { "Paramount, Inc.", "5555 Melrose Ave, LA", 2 });
+            expected.tuples.add (new Comparable [] { "The \"Big\" Studio", "1 Main St", 3 });
+            expected.tuples.add (new Comparable [] { "Two Line Studio", "Suite 4\n2 Elm St", 4 });
+            check (stdout, "loadCSV with quoted values", loaded, expected);
+        } catch (IOException ex) {
+            stdout.println ("loadCSV: FAILED - " + ex);
+        } // try
+    } // main
+
+    /***************************************************************************
+     * Select the tuples satisfying a condition by testing every tuple (the
+     * result the index paths of select are checked against).
+     * @param condition  the selection condition
+     * @return  the table of satisfying tuples
+     */
+    private Table scan (String condition)
+    {
+        Condition pred   = Condition.compile (infix2postfix (condition), attribute, domain);
+        Table     result = new Table (this, "_scan");
+        for (Comparable [] tup : tuples) if (pred.eval (tup)) result.tuples.add (tup);
+        return result;
+    } // scan
+
+    /***************************************************************************
+     * Join this table and table2 by testing every pair of tuples (the result
+     * the faster joins are checked against).
+     * @param table2  the rhs table in the join operation
+     * @param match   whether a pair of tuples joins
+     * @return  the joined table
+     */
+    private Table nestedLoop (Table table2, BiPredicate <Comparable [], Comparable []> match)
+    {
+        Table result = joinTable (table2);
+        for (Comparable [] t1 : tuples) {
+            for (Comparable [] t2 : table2.tuples) {
+                if (match.test (t1, t2)) result.tuples.add (concat (t1, t2));
+            } // for
+        } // for
+        return result;
+    } // nestedLoop
+
+    /***************************************************************************
+     * Make an empty table to receive the join of this table and table2.
+     * @param table2  the rhs table in the join operation
+     * @return  the empty result table
+     */
+    private Table joinTable (Table table2)
+    {
+        return new Table (name + count.getAndIncrement (), joinAttribute (table2), concat (domain, table2.domain), key);
+    } // joinTable
+
+    /***************************************************************************
+     * Report whether two tables hold the same tuples, counting duplicates but
+     * ignoring order.
+     * @param report  where to print the outcome
+     * @param what    what is being checked
+     * @param fast    the table produced by the path being checked
+     * @param slow    the table produced by the reference path
+     */
+    private static void check (PrintStream report, String what, Table fast, Table slow)
+    {
+        Map <KeyType, Integer> diff = new HashMap <> ();
+        for (Comparable [] tup : fast.tuples) diff.merge (new KeyType (tup), 1, Integer::sum);
+        for (Comparable [] tup : slow.tuples) diff.merge (new KeyType (tup), -1, Integer::sum);
+        diff.values ().removeIf (n -> n == 0);
+        report.println (what + ": " + (diff.isEmpty () ? "ok" : "FAILED") + " (" + slow.tuples.size () + " tuples)");
+    } // check
+
+    /***************************************************************************
+     * A join condition resolved into column positions: cols1 [i] of this table is
+     * compared by op with cols2 [i] of table2.
+     */
+    private static class JoinCond
+    {
+        final int [] cols1;
+        final int [] cols2;
+        final String op;
+        final Bound  lo, hi;                               // for a band join (null if unbounded)
+
+        JoinCond (int [] _cols1, int [] _cols2, String _op, Bound _lo, Bound _hi)
+        {
+            cols1 = _cols1;
+            cols2 = _cols2;
+            op    = _op;
+            lo    = _lo;
+            hi    = _hi;
+        } // JoinCond
+
+    } // JoinCond class
+
+    /***************************************************************************
+     * A bound of a band join on the table2 value b: the value a of this table
+     * plus a constant offset (null for none), which b may equal unless strict.
+     */
+    private static class Bound
+    {
+        final Comparable off;
+        final boolean    strict;
+
+        Bound (Comparable _off, boolean _strict)
+        {
+            off    = _off;
+            strict = _strict;
+        } // Bound
+
+        Comparable at (Comparable a)
+        {
+            return off == null ? widen (a) : plus (a, off);
+        } // at
+
+    } // Bound class
+
+    /***************************************************************************
+     * Tuples grouped into partitions by their join-key hash: the tuples of
+     * partition p, and their hashes, are at positions start [p] to
+     * start [p + 1] - 1.
+     */
+    private static class Partitioned
+    {
+        final Comparable [][] tup;
+        final int []          hash;
+        final int []          start;
+
+        Partitioned (int n, int nParts)
+        {
+            tup   = new Comparable [n][];
+            hash  = new int [n];
+            start = new int [nParts + 1];
+        } // Partitioned
+
+    } // Partitioned class
+
+    /***************************************************************************
+     * The RowIndex class is the primary index of a table whose tuples are not
+     * kept as objects (see FileList and ColumnList): it maps each key to the
+     * position of its tuple and materializes the tuple from the storage when
+     * it is looked up, so the index holds no tuples.  Entries are added by
+     * place rather than put.  An ordered map of positions gives an ordered
+     * index (see Sorted).
+     */
+    private static class RowIndex
+            extends AbstractMap <KeyType, Comparable []>
+    {
+        final Map <KeyType, Integer> rows;
+        final List <Comparable []>   tuples;
+
+        RowIndex (Map <KeyType, Integer> _rows, List <Comparable []> _tuples)
+        {
+            rows   = _rows;
+            tuples = _tuples;
+        } // RowIndex
+
+        static RowIndex of (Map <KeyType, Integer> rows, List <Comparable []> tuples)
+        {
+            return rows instanceof SortedMap ? new Sorted ((SortedMap <KeyType, Integer>) rows, tuples)
+                                             : new RowIndex (rows, tuples);
+        } // of
+
+        Integer place (KeyType key, int pos) { return rows.put (key, pos); }
+
+        public Comparable [] get (Object key)
+        {
+            Integer pos = rows.get (key);
+            return pos == null ? null : tuples.get (pos);
+        } // get
+
+        public boolean containsKey (Object key) { return rows.containsKey (key); }
+
+        public int size () { return rows.size (); }
+
+        public Set <Map.Entry <KeyType, Comparable []>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <KeyType, Comparable []>> () {
+                public int size () { return rows.size (); }
+
+                public Iterator <Map.Entry <KeyType, Comparable []>> iterator ()
+                {
+                    Iterator <Map.Entry <KeyType, Integer>> it = rows.entrySet ().iterator ();
+                    return new Iterator <Map.Entry <KeyType, Comparable []>> () {
+                        public boolean hasNext () { return it.hasNext (); }
+
+                        public Map.Entry <KeyType, Comparable []> next ()
+                        {
+                            Map.Entry <KeyType, Integer> e = it.next ();
+                            return new SimpleImmutableEntry <> (e.getKey (), tuples.get (e.getValue ()));
+                        } // next
+                    };
+                } // iterator
+            };
+        } // entrySet
+
+        /***********************************************************************
+         * The Sorted class is a RowIndex over an ordered map of positions, whose
+         * sub-maps are RowIndexes over the sub-maps of positions.
+         */
+        static final class Sorted
+                extends RowIndex
+                implements SortedMap <KeyType, Comparable []>
+        {
+            Sorted (SortedMap <KeyType, Integer> _rows, List <Comparable []> _tuples) { super (_rows, _tuples); }
+
+            private SortedMap <KeyType, Integer> sorted () { return (SortedMap <KeyType, Integer>) rows; }
+
+            public Comparator <? super KeyType> comparator () { return sorted ().comparator (); }
+
+            public KeyType firstKey () { return sorted ().firstKey (); }
+
+            public KeyType lastKey () { return sorted ().lastKey (); }
+
+            public SortedMap <KeyType, Comparable []> subMap (KeyType from, KeyType to)
+            {
+                return new Sorted (sorted ().subMap (from, to), tuples);
+            } // subMap
+
+            public SortedMap <KeyType, Comparable []> headMap (KeyType to)
+            {
+                return new Sorted (sorted ().headMap (to), tuples);
+            } // headMap
+
+            public SortedMap <KeyType, Comparable []> tailMap (KeyType from)
+            {
+                return new Sorted (sorted ().tailMap (from), tuples);
+            } // tailMap
+
+        } // Sorted class
+
+    } // RowIndex class
 
 } // Table class
 
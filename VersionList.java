@@ -0,0 +1,399 @@
+/*******************************************************************************
+ * @file  VersionList.java
+ *
+ * @author   agent
+ */
+
+import static java.lang.System.out;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*******************************************************************************
+ * The VersionList class stores the tuples of a versioned table (see
+ * StorageType.VERSION_LIST), so that queries read a snapshot of the table
+ * while inserts continue.  Each key has a chain of versions, newest first,
+ * each carrying the timestamp of the commit that began it; the heads of the
+ * chains are kept in a ConcurrentSkipListMap, which is also the versioned
+ * primary index.  Inserting a tuple whose key is already present makes it the
+ * key's new version.  A query as of a timestamp sees, for each key, the newest
+ * version that began at or before it (see View and IndexView), so a scan
+ * visits one version per key and walks back only past versions committed
+ * after its snapshot.  Once a version began at or before every snapshot's
+ * timestamp, no one can see the versions below it, and the chain is cut there
+ * in the background (see Snapshot).  Neither readers nor writers lock: a
+ * writer swaps in the new head with a compare-and-set, and waits only for
+ * earlier commits to become visible.
+ */
+public class VersionList
+       extends AbstractList <Comparable []>
+{
+    /***************************************************************************
+     * The Version class is one version of a tuple, linked to the version of the
+     * same key it replaced.
+     */
+    static final class Version
+    {
+        final Comparable [] tup;
+        final long          begin;                   // commit timestamp
+        volatile Version    prev;                    // null once no snapshot can see it
+
+        Version (Comparable [] _tup, long _begin, Version _prev)
+        {
+            tup   = _tup;
+            begin = _begin;
+            prev  = _prev;
+        } // Version
+
+    } // Version class
+
+    /** The newest version of each key.
+     */
+    private final ConcurrentSkipListMap <KeyType, Version> chains = new ConcurrentSkipListMap <> ();
+
+    /** The number of keys.
+     */
+    private final AtomicInteger keys = new AtomicInteger ();
+
+    /** The versions that replaced another, roughly in commit order: once one
+     *  began at or before the horizon, the versions below it are unreachable.
+     */
+    private final ConcurrentLinkedQueue <Version> replaced = new ConcurrentLinkedQueue <> ();
+
+    /***************************************************************************
+     * Construct an empty version list, collected by the Snapshot collector.
+     */
+    public VersionList ()
+    {
+        Snapshot.register (this);
+    } // VersionList
+
+    /***************************************************************************
+     * Insert a version of a tuple, making it its key's newest version in one
+     * commit.  The head is swapped in only if no other writer replaced it since
+     * it was read, so per key the versions are in timestamp order; a writer
+     * that loses the race still commits its timestamp (changing nothing) and
+     * tries again with a new one.  The timestamp is committed even if the swap
+     * throws, since every later commit, on any versioned table, waits for it.
+     * @param key  the key of the tuple
+     * @param tup  the tuple
+     */
+    void insert (KeyType key, Comparable [] tup)
+    {
+        while (true) {
+            Version p  = chains.get (key);
+            Version v;
+            boolean ok;
+            long    ts = Snapshot.reserve ();
+            try {
+                v  = new Version (tup, ts, p);
+                ok = p == null ? chains.putIfAbsent (key, v) == null : chains.replace (key, p, v);
+            } finally {
+                Snapshot.commit (ts);                     // later commits wait on this one
+            } // try
+            if (ok) {
+                if (p == null) keys.incrementAndGet ();
+                else replaced.add (v);
+                return;
+            } // if
+        } // while
+    } // insert
+
+    /***************************************************************************
+     * Return the version of a tuple visible as of a timestamp.
+     * @param v   the newest version of its key (may be null)
+     * @param ts  the timestamp
+     * @return  the newest version that began at or before ts, or null if none
+     */
+    private static Comparable [] visible (Version v, long ts)
+    {
+        while (v != null && v.begin > ts) v = v.prev;
+        return v == null ? null : v.tup;
+    } // visible
+
+    /***************************************************************************
+     * Cut the chains below the versions that began at or before the horizon,
+     * as no snapshot can see past them (called by the Snapshot collector).
+     * @param horizon  the oldest timestamp a snapshot may read as of
+     * @return  the number of chains cut
+     */
+    int vacuum (long horizon)
+    {
+        int n = 0;
+        for (Version v; (v = replaced.peek ()) != null && v.begin <= horizon; n++) {
+            replaced.poll ();
+            v.prev = null;
+        } // for
+        return n;
+    } // vacuum
+
+    /***************************************************************************
+     * Return a view of the versions visible as of a snapshot.
+     * @param s  the snapshot
+     * @return  the view
+     */
+    View asOf (Snapshot s)
+    {
+        return new View (s.ts);
+    } // asOf
+
+    /***************************************************************************
+     * Return the primary index of the newest version of each key, committed or
+     * not (the index of the versioned table itself; queries use asOf).
+     * @return  the index
+     */
+    IndexView index ()
+    {
+        return new IndexView (chains, Long.MAX_VALUE);
+    } // index
+
+    /***************************************************************************
+     * Return the newest committed version of each key.  Without a snapshot
+     * this is only a momentary view; queries use asOf.
+     * @return  the view
+     */
+    public Iterator <Comparable []> iterator ()
+    {
+        return new View (Snapshot.latest ()).iterator ();
+    } // iterator
+
+    /***************************************************************************
+     * Return the newest committed version of the i-th key (walking the keys).
+     * @param i  the position of the key
+     * @return  the tuple
+     */
+    public Comparable [] get (int i)
+    {
+        return new View (Snapshot.latest ()).get (i);
+    } // get
+
+    /***************************************************************************
+     * Return the number of keys (including any whose first version is still
+     * being committed).
+     * @return  the number of keys
+     */
+    public int size ()
+    {
+        return keys.get ();
+    } // size
+
+    /***************************************************************************
+     * Return the number of versions kept, i.e., not yet cut from a chain (for
+     * testing).
+     * @return  the number of versions
+     */
+    int versions ()
+    {
+        int n = 0;
+        for (Version v : chains.values ()) for ( ; v != null; v = v.prev) n++;
+        return n;
+    } // versions
+
+    /***************************************************************************
+     * The View class is a read-only list of the versions visible as of a
+     * timestamp, one per key in key order.  Iterating resolves each chain on the
+     * fly; size and get first collect the visible versions once.
+     */
+    final class View
+          extends AbstractList <Comparable []>
+          implements RandomAccess
+    {
+        private final long               ts;
+        private volatile Comparable [][] rows;
+
+        View (long _ts)
+        {
+            ts = _ts;
+        } // View
+
+        public Iterator <Comparable []> iterator ()
+        {
+            return new IndexView (chains, ts).values ().iterator ();
+        } // iterator
+
+        public Comparable [] get (int k)
+        {
+            return rows () [k];
+        } // get
+
+        public int size ()
+        {
+            return rows ().length;
+        } // size
+
+        /***********************************************************************
+         * Return the primary index as of the same timestamp.
+         * @return  the index of the view's versions
+         */
+        IndexView index ()
+        {
+            return new IndexView (chains, ts);
+        } // index
+
+        private Comparable [][] rows ()
+        {
+            if (rows == null) {
+                List <Comparable []> r = new ArrayList <> ();
+                for (Comparable [] tup : this) r.add (tup);
+                rows = r.toArray (new Comparable [r.size ()][]);
+            } // if
+            return rows;
+        } // rows
+
+    } // View class
+
+    /***************************************************************************
+     * The IndexView class is a read-only primary index of the versions visible
+     * as of a timestamp, mapping each key to its visible version.  Its sub-maps
+     * are IndexViews over the sub-maps of the chains.
+     */
+    static final class IndexView
+          extends AbstractMap <KeyType, Comparable []>
+          implements SortedMap <KeyType, Comparable []>
+    {
+        private final ConcurrentNavigableMap <KeyType, Version> heads;
+        private final long                                      ts;
+
+        IndexView (ConcurrentNavigableMap <KeyType, Version> _heads, long _ts)
+        {
+            heads = _heads;
+            ts    = _ts;
+        } // IndexView
+
+        public Comparable [] get (Object key) { return visible (heads.get (key), ts); }
+
+        public boolean containsKey (Object key) { return get (key) != null; }
+
+        public boolean isEmpty () { return ! entrySet ().iterator ().hasNext (); }
+
+        public Set <Map.Entry <KeyType, Comparable []>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <KeyType, Comparable []>> () {
+                public int size ()
+                {
+                    int n = 0;
+                    for (Version v : heads.values ()) if (visible (v, ts) != null) n++;
+                    return n;
+                } // size
+
+                public Iterator <Map.Entry <KeyType, Comparable []>> iterator ()
+                {
+                    Iterator <Map.Entry <KeyType, Version>> it = heads.entrySet ().iterator ();
+                    return new Iterator <Map.Entry <KeyType, Comparable []>> () {
+                        Map.Entry <KeyType, Comparable []> next = advance ();
+
+                        Map.Entry <KeyType, Comparable []> advance ()
+                        {
+                            while (it.hasNext ()) {
+                                Map.Entry <KeyType, Version> e   = it.next ();
+                                Comparable []                tup = visible (e.getValue (), ts);
+                                if (tup != null) return new SimpleImmutableEntry <> (e.getKey (), tup);
+                            } // while
+                            return null;
+                        } // advance
+
+                        public boolean hasNext () { return next != null; }
+
+                        public Map.Entry <KeyType, Comparable []> next ()
+                        {
+                            if (next == null) throw new NoSuchElementException ();
+                            Map.Entry <KeyType, Comparable []> e = next;
+                            next = advance ();
+                            return e;
+                        } // next
+                    };
+                } // iterator
+            };
+        } // entrySet
+
+        public Comparator <? super KeyType> comparator () { return null; }
+
+        public KeyType firstKey () { return entrySet ().iterator ().next ().getKey (); }
+
+        public KeyType lastKey ()
+        {
+            for (Map.Entry <KeyType, Version> e : heads.descendingMap ().entrySet ()) {
+                if (visible (e.getValue (), ts) != null) return e.getKey ();
+            } // for
+            throw new NoSuchElementException ();
+        } // lastKey
+
+        public SortedMap <KeyType, Comparable []> subMap (KeyType from, KeyType to)
+        {
+            return new IndexView (heads.subMap (from, to), ts);
+        } // subMap
+
+        public SortedMap <KeyType, Comparable []> headMap (KeyType to)
+        {
+            return new IndexView (heads.headMap (to), ts);
+        } // headMap
+
+        public SortedMap <KeyType, Comparable []> tailMap (KeyType from)
+        {
+            return new IndexView (heads.tailMap (from), ts);
+        } // tailMap
+
+    } // IndexView class
+
+    /***************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args) throws InterruptedException
+    {
+        java.io.PrintStream stdout = System.out;
+        System.setOut (new java.io.PrintStream (java.io.OutputStream.nullOutputStream ()));
+        Table account = new Table ("account", "id balance", "Integer Integer", "id",
+                                   MapType.SKIPLIST_MAP, StorageType.VERSION_LIST);
+        int nAccounts = 1000;
+        for (int i = 0; i < nAccounts; i++) account.insert (new Comparable [] { i, 0 });
+
+        AtomicBoolean stop   = new AtomicBoolean ();
+        Thread        writer = new Thread (() -> {           // keep adding versions while queries run
+            Random rand = new Random (1);
+            for (int v = 1; ! stop.get (); v++) account.insert (new Comparable [] { rand.nextInt (nAccounts), v });
+        });
+        writer.start ();
+
+        int complete = 0, repeatable = 0, consistent = 0;
+        for (int q = 0; q < 20; q++) {
+            try (Snapshot s = Snapshot.begin ()) {
+                Table  view = account.asOf (s);
+                Table  a    = view.select ("balance >= 0");
+                Thread.sleep (20);
+                Table  b    = view.select ("balance >= 0");
+                Table  c    = view.select ("id >= 100 & id < 200");         // through the versioned index
+                if (a.size () == nAccounts) complete++;
+                if (a.minus (b).size () == 0 && b.minus (a).size () == 0) repeatable++;
+                if (c.size () == 100 && c.minus (a).size () == 0) consistent++;
+            } // try
+        } // for
+        stop.set (true);
+        writer.join ();
+        System.setOut (stdout);
+        out.println ("snapshots with one version per key: " + complete + "/20, repeatable: " + repeatable
+                     + "/20, index agrees with scan: " + consistent + "/20");
+
+        VersionList vl = new VersionList ();                  // reclaiming versions no snapshot can see
+        Snapshot    s  = null;
+        for (int v = 0; v < 100; v++) {
+            if (v == 50) s = Snapshot.begin ();
+            for (int k = 0; k < 100; k++) vl.insert (new KeyType (new Comparable [] { k }), new Comparable [] { k, v });
+        } // for
+        Thread.sleep (300);
+        int seen = 0;
+        for (Comparable [] tup : vl.asOf (s)) if ((Integer) tup [1] == 49) seen++;
+        out.println ("versions kept with a snapshot open: " + vl.versions () + " (expect 5100), seeing round 49: "
+                     + seen + " (expect 100)");
+        s.close ();
+        Thread.sleep (300);
+        try (Snapshot now = Snapshot.begin ()) {
+            out.println ("versions kept after closing it: " + vl.versions () + " (expect 100), visible now: "
+                         + vl.asOf (now).size ());
+        } // try
+    } // main
+
+} // VersionList class
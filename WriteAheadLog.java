@@ -0,0 +1,517 @@
+/*******************************************************************************
+ * @file  WriteAheadLog.java
+ *
+ * @author   agent
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import static java.lang.System.out;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/*******************************************************************************
+ * The WriteAheadLog class records the tuples inserted into a table (see
+ * Table.openLog) so they can be replayed after a crash.  The log starts with a
+ * header giving its record size and the log sequence number (LSN) of the
+ * records it has dropped, followed by one record per tuple: the packed tuple
+ * (see Table.pack) and a CRC-32 of it, so a record torn by a crash is detected
+ * and dropped on replay.  Records are numbered from 1, so the LSN of a record
+ * is the number of tuples logged up to and including it.  When a table is
+ * saved, its snapshot records the LSN it covers and the log is truncated to
+ * the records after it (see truncate); replay skips the records a snapshot
+ * already holds.  When an insert returns depends on the Durability: under
+ * GROUP, inserts append to a shared buffer and the first waiting inserter
+ * becomes the leader that writes and forces the whole buffer while the others
+ * wait, so one fsync commits a batch of concurrent inserts.  If a write fails,
+ * the records not yet forced are lost: every insert waiting on them fails and
+ * the log accepts no more.
+ */
+public class WriteAheadLog
+       implements Closeable
+{
+    /** The magic number identifying a log file.
+     */
+    private static final int MAGIC = 0x44425057;                     // "DBPW"
+
+    /** The size of the header (magic number, record size and base LSN).
+     */
+    private static final int HEADER = 16;
+
+    /** How often an ASYNC log is forced, in milliseconds.
+     */
+    private static final long ASYNC_MILLIS = 50;
+
+    /** The table whose inserts are logged.
+     */
+    private final Table table;
+
+    /** When inserts reach the disk.
+     */
+    private final Durability durability;
+
+    /** The size of a log record (packed tuple and checksum) in bytes.
+     */
+    private final int recordSize;
+
+    /** The log file and the channel used to write it (replaced by truncate).
+     */
+    private final File        path;
+    private FileChannel       channel;
+
+    /** The LSN of the last record dropped from the front of the log (see
+     *  truncate), so the first record in the file has LSN base + 1.
+     */
+    private long base = 0;
+
+    /** The checksum calculator (used while holding the lock).
+     */
+    private final CRC32 crc = new CRC32 ();
+
+    /** The records appended but not yet written, and a spare buffer to swap in
+     *  while the leader writes them.
+     */
+    private ByteBuffer pending, spare;
+
+    /** The LSNs of the last record appended and the last one forced.
+     */
+    private long appended = 0, durable = 0;
+
+    /** The LSN of the last record appended when a write failed (0 if none has):
+     *  the records after durable up to it are lost, and none may be appended.
+     */
+    private long failedUpto = 0;
+
+    /** Whether a leader is writing a batch.
+     */
+    private boolean flushing = false;
+
+    /** Whether the log has been closed.
+     */
+    private boolean closed = false;
+
+    /** The thread forcing an ASYNC log (null otherwise).
+     */
+    private final Thread flusher;
+
+    /***************************************************************************
+     * Open the log for a table, creating the file if it does not exist.  An
+     * existing log must have been written for tuples of the same size.
+     * @param _path        the log file
+     * @param _table       the table whose inserts are logged
+     * @param _durability  when inserts reach the disk
+     */
+    public WriteAheadLog (File _path, Table _table, Durability _durability)
+    {
+        path       = _path;
+        table      = _table;
+        durability = _durability;
+        recordSize = table.tupleSize () + 4;
+        pending    = ByteBuffer.allocate (recordSize << 6);
+        spare      = ByteBuffer.allocate (recordSize << 6);
+        try {
+            channel = FileChannel.open (path.toPath (), StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size () < HEADER) {
+                ByteBuffer h = header (0);
+                channel.truncate (0);
+                while (h.hasRemaining ()) channel.write (h, h.position ());
+                channel.force (true);
+            } else {
+                ByteBuffer h = ByteBuffer.allocate (HEADER);
+                while (h.hasRemaining () && channel.read (h, h.position ()) >= 0) ;
+                h.flip ();
+                if (h.getInt () != MAGIC || h.getInt () != recordSize) {
+                    channel.close ();
+                    throw new IllegalArgumentException (path + " is not a log for tuples of table "
+                                                        + table.getName ());
+                } // if
+                base = h.getLong ();
+            } // if
+            channel.position (channel.size ());
+            appended = durable = base + (channel.size () - HEADER) / recordSize;
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("WriteAheadLog: cannot open " + path, ex);
+        } // try
+
+        if (durability == Durability.ASYNC) {
+            flusher = new Thread (this::flushLoop, "wal-" + path.getName ());
+            flusher.setDaemon (true);
+            flusher.start ();
+        } else {
+            flusher = null;
+        } // if
+    } // WriteAheadLog
+
+    /***************************************************************************
+     * Return a log header.
+     * @param lsn  the LSN of the last record dropped from the front of the log
+     * @return  the header, ready to be written
+     */
+    private ByteBuffer header (long lsn)
+    {
+        return ByteBuffer.allocate (HEADER).putInt (MAGIC).putInt (recordSize).putLong (lsn).flip ();
+    } // header
+
+    /***************************************************************************
+     * Replay the log, passing the tuple of each intact record after a given LSN
+     * to the consumer, then cut off any torn record at the end so that new
+     * records follow the last intact one.
+     * @param after  the LSN of the last record already applied (e.g., the LSN
+     *               recorded in the snapshot the table was loaded from)
+     * @param apply  what to do with each logged tuple
+     * @return  the number of tuples replayed
+     */
+    public int replay (long after, Consumer <Comparable []> apply)
+    {
+        if (after < base) {
+            out.println ("WriteAheadLog.replay: error - records " + (after + 1) + " to " + base
+                         + " were dropped from " + path + " (load the snapshot saved with them)");
+        } // if
+        byte [] rec = new byte [recordSize];
+        long    pos = HEADER, lsn = base;
+        int     n   = 0;
+        try (DataInputStream in = new DataInputStream (new BufferedInputStream (new FileInputStream (path),
+                                                                                1 << 16))) {
+            in.skipNBytes (HEADER);
+            while (in.read (rec, 0, 1) == 1) {
+                in.readFully (rec, 1, recordSize - 1);
+                crc.reset ();
+                crc.update (rec, 0, recordSize - 4);
+                if ((int) crc.getValue () != ByteBuffer.wrap (rec, recordSize - 4, 4).getInt ()) break;
+                if (++lsn > after) {
+                    apply.accept (table.unpack (rec));
+                    n++;
+                } // if
+                pos += recordSize;
+            } // while
+        } catch (EOFException ex) {
+            // a record torn by a crash: dropped below
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("WriteAheadLog.replay: " + path, ex);
+        } // try
+
+        try {
+            if (channel.size () > pos) {
+                out.println ("WriteAheadLog.replay: dropping torn record at end of " + path);
+                channel.truncate (pos);
+                channel.force (true);
+            } // if
+            channel.position (pos);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("WriteAheadLog.replay: " + path, ex);
+        } // try
+        synchronized (this) {
+            appended = durable = lsn;
+        } // synchronized
+        return n;
+    } // replay
+
+    /***************************************************************************
+     * Log a tuple, returning once it is as durable as the Durability requires.
+     * @param tup  the tuple being inserted
+     */
+    public void append (Comparable [] tup)
+    {
+        appendAll (Collections.singletonList (tup));
+    } // append
+
+    /***************************************************************************
+     * Log a batch of tuples, returning once all are as durable as the
+     * Durability requires (a single force covers the whole batch, even under
+     * SYNC).
+     * @param tups  the tuples being inserted
+     */
+    public void appendAll (List <Comparable []> tups)
+    {
+        long seq;
+        synchronized (this) {
+            if (closed) throw new IllegalStateException ("WriteAheadLog.append: log is closed");
+            if (failedUpto > 0) throw lost ();
+            for (Comparable [] tup : tups) enqueue (tup);
+            seq = appended;
+            if (durability == Durability.ASYNC) return;
+            if (durability == Durability.SYNC) {
+                boolean ok = false;
+                flushing = true;
+                try {
+                    write (pending);
+                    ok = true;
+                } finally {
+                    flushing = false;
+                    if (ok) durable = seq;
+                    else failedUpto = appended;
+                } // try
+                return;
+            } // if
+        } // synchronized
+        commit (seq);
+    } // appendAll
+
+    /***************************************************************************
+     * Return the LSN of the last record appended.  Once appendAll has returned
+     * for a record, its LSN is at most this.
+     * @return  the LSN
+     */
+    public synchronized long position ()
+    {
+        return appended;
+    } // position
+
+    /***************************************************************************
+     * Return the error reported for records lost by a failed write.
+     * @return  the exception to throw
+     */
+    private IllegalStateException lost ()
+    {
+        return new IllegalStateException ("WriteAheadLog: a write to " + path + " failed, records "
+                                          + (durable + 1) + " to " + failedUpto + " are lost");
+    } // lost
+
+    /***************************************************************************
+     * Add a tuple's record to the pending buffer (called holding the lock).
+     * @param tup  the tuple to log
+     */
+    private void enqueue (Comparable [] tup)
+    {
+        if (pending.remaining () < recordSize) {
+            pending = ByteBuffer.allocate (pending.capacity () << 1).put (pending.flip ());
+        } // if
+        int start = pending.position ();
+        table.pack (tup, pending);
+        crc.reset ();
+        crc.update (pending.duplicate ().position (start).limit (start + recordSize - 4));
+        pending.putInt ((int) crc.getValue ());
+        appended++;
+    } // enqueue
+
+    /***************************************************************************
+     * Wait until the record with the given LSN is forced, becoming the leader
+     * that writes and forces the pending batch if no one else is.  If the write
+     * covering the record fails, so does this (and every later commit).
+     * @param seq  the LSN of the record
+     */
+    private void commit (long seq)
+    {
+        while (true) {
+            ByteBuffer batch;
+            long       upto;
+            synchronized (this) {
+                while (flushing && durable < seq) {
+                    try {
+                        wait ();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread ().interrupt ();
+                    } // try
+                } // while
+                if (durable >= seq) return;
+                if (failedUpto >= seq) throw lost ();
+                flushing = true;                               // become the leader
+                batch    = pending;
+                pending  = spare;
+                upto     = appended;
+            } // synchronized
+
+            boolean ok = false;
+            try {
+                write (batch);
+                ok = true;
+            } finally {
+                synchronized (this) {
+                    flushing = false;
+                    if (ok) durable = upto;
+                    else failedUpto = appended;                // the batch is gone: fail all waiting on it
+                    spare = batch;
+                    notifyAll ();
+                } // synchronized
+            } // try
+        } // while
+    } // commit
+
+    /***************************************************************************
+     * Write and force the buffered records to the end of the log, leaving the
+     * buffer empty.
+     * @param buf  the buffer of records
+     */
+    private void write (ByteBuffer buf)
+    {
+        buf.flip ();
+        try {
+            while (buf.hasRemaining ()) channel.write (buf);
+            channel.force (false);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("WriteAheadLog.write: " + path, ex);
+        } finally {
+            buf.clear ();
+        } // try
+    } // write
+
+    /***************************************************************************
+     * Drop the records up to an LSN from the front of the log, once a snapshot
+     * holding their tuples has been saved (see Table.save).  The records after
+     * it are copied to a new log whose header gives the LSN, which then replaces
+     * the old one by an atomic rename, so a crash leaves one log or the other.
+     * Either way replay skips the records the snapshot holds.
+     * @param upto  the LSN of the last record to drop
+     */
+    public synchronized void truncate (long upto)
+    {
+        while (flushing) {
+            try {
+                wait ();
+            } catch (InterruptedException ex) {
+                Thread.currentThread ().interrupt ();
+                return;
+            } // try
+        } // while
+        if (closed) throw new IllegalStateException ("WriteAheadLog.truncate: log is closed");
+        if (failedUpto > 0) throw lost ();
+        if (upto <= base) return;
+        if (upto > appended) throw new IllegalArgumentException ("WriteAheadLog.truncate: no record " + upto);
+        if (pending.position () > 0) {
+            try {
+                write (pending);
+            } catch (UncheckedIOException ex) {
+                failedUpto = appended;
+                throw ex;
+            } // try
+            durable = appended;
+        } // if
+
+        File tmp = new File (path.getPath () + ".tmp");
+        try {
+            try (FileChannel to = FileChannel.open (tmp.toPath (), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer h = header (upto);
+                while (h.hasRemaining ()) to.write (h);
+                long end = channel.size ();
+                for (long p = HEADER + (upto - base) * recordSize; p < end; ) p += channel.transferTo (p, end - p, to);
+                to.force (true);
+            } // try
+            Files.move (tmp.toPath (), path.toPath (), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            channel.close ();
+            channel = FileChannel.open (path.toPath (), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position (channel.size ());
+            base = upto;
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("WriteAheadLog.truncate: " + path, ex);
+        } // try
+    } // truncate
+
+    /***************************************************************************
+     * Force the pending records of an ASYNC log, every ASYNC_MILLIS, until the
+     * log is closed.
+     */
+    private void flushLoop ()
+    {
+        while (true) {
+            try {
+                Thread.sleep (ASYNC_MILLIS);
+            } catch (InterruptedException ex) {
+                return;
+            } // try
+            synchronized (this) {
+                if (closed) return;
+                if (pending.position () > 0) {
+                    try {
+                        write (pending);
+                        durable = appended;
+                    } catch (UncheckedIOException ex) {
+                        failedUpto = appended;
+                        out.println ("WriteAheadLog: error - " + ex.getMessage ());
+                        return;
+                    } // try
+                } // if
+            } // synchronized
+        } // while
+    } // flushLoop
+
+    /***************************************************************************
+     * Force any pending records and close the log.
+     */
+    public void close ()
+    {
+        synchronized (this) {
+            while (flushing) {
+                try {
+                    wait ();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread ().interrupt ();
+                    break;
+                } // try
+            } // while
+            if (closed) return;
+            closed = true;
+            try {
+                if (failedUpto == 0 && pending.position () > 0) write (pending);
+                durable = appended;
+            } catch (UncheckedIOException ex) {
+                failedUpto = appended;
+                out.println ("WriteAheadLog.close: error - " + ex.getMessage ());
+            } // try
+            try {
+                channel.close ();
+            } catch (IOException ex) {
+                out.println ("WriteAheadLog.close: " + ex);
+            } // try
+        } // synchronized
+        if (flusher != null) flusher.interrupt ();
+    } // close
+
+    /***************************************************************************
+     * The main method is used for testing purposes only.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args) throws Exception
+    {
+        Table movie = new Table ("movie", "title year length genre studioName producerNo",
+                                 "String Integer Integer String String Integer", "title year");
+        File  path  = File.createTempFile ("movie_", ".wal");
+        path.deleteOnExit ();
+        for (Durability d : Durability.values ()) {
+            path.delete ();
+            WriteAheadLog log    = new WriteAheadLog (path, movie, d);
+            Thread []     worker = new Thread [16];
+            long          start  = System.nanoTime ();
+            for (int w = 0; w < worker.length; w++) {
+                int id = w;
+                worker [w] = new Thread (() -> {
+                    for (int i = 0; i < 100; i++) {
+                        log.append (new Comparable [] { "Movie" + id + "_" + i, 1900 + i, 100, "drama", "Fox", id });
+                    } // for
+                });
+                worker [w].start ();
+            } // for
+            for (Thread t : worker) t.join ();
+            long ms = (System.nanoTime () - start) / 1000000;
+            log.close ();
+
+            int [] n = new int [1];
+            try (WriteAheadLog log2 = new WriteAheadLog (path, movie, d)) {
+                log2.replay (0, tup -> n [0]++);
+            } // try
+            out.println (d + ": " + worker.length * 100 + " appends by " + worker.length + " threads in "
+                         + ms + " ms, " + n [0] + " replayed");
+        } // for
+
+        long lsn;                                             // as if a snapshot held all but the last 100
+        try (WriteAheadLog log = new WriteAheadLog (path, movie, Durability.GROUP)) {
+            lsn = log.position () - 100;
+            log.truncate (lsn);
+            log.append (new Comparable [] { "Movie_new", 2000, 100, "drama", "Fox", 0 });
+        } // try
+        int [] n = new int [1];
+        try (WriteAheadLog log = new WriteAheadLog (path, movie, Durability.GROUP)) {
+            log.replay (lsn, tup -> n [0]++);
+        } // try
+        out.println ("truncated to LSN " + lsn + ": " + n [0] + " replayed after it (expect 101), "
+                     + path.length () + " bytes");
+    } // main
+
+} // WriteAheadLog class